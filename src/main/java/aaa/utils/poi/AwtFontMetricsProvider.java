@@ -0,0 +1,130 @@
+package aaa.utils.poi;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.ss.usermodel.Font;
+
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineBreakMeasurer;
+import java.awt.font.TextAttribute;
+import java.awt.font.TextLayout;
+import java.text.AttributedString;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Метрики шрифтов средствами AWT: тексты измеряются {@link TextLayout}, а разбиение на строки
+ * выполняется {@link LineBreakMeasurer} с учётом кернинга и правил переноса. Требует
+ * установленных в системе шрифтов, первое обращение инициализирует шрифтовую подсистему AWT
+ */
+public class AwtFontMetricsProvider implements FontMetricsProvider {
+
+	/** Контекст отрисовки, общий для всех измерений (неизменяемый, поэтому потокобезопасный) */
+	private static final FontRenderContext FONT_RENDER_CONTEXT =
+			new FontRenderContext(null, true, true);
+
+	private final Map<FontFingerprint, FontMetrics> metrics = new ConcurrentHashMap<>();
+
+	@Override
+	public FontMetrics getFontMetrics(FontFingerprint font) {
+		return metrics.computeIfAbsent(font, AwtFontMetrics::new);
+	}
+
+	private static void copyAttributes(	FontFingerprint font,
+										AttributedString str,
+										int startIdx,
+										int endIdx) {
+		str.addAttribute(TextAttribute.FAMILY, font.getFontName(), startIdx, endIdx);
+		str.addAttribute(TextAttribute.SIZE, new Float(font.getFontHeightInPoints()));
+		if (font.getBoldweight() == Font.BOLDWEIGHT_BOLD) {
+			str.addAttribute(TextAttribute.WEIGHT, TextAttribute.WEIGHT_BOLD, startIdx, endIdx);
+		}
+		if (font.isItalic()) {
+			str.addAttribute(TextAttribute.POSTURE, TextAttribute.POSTURE_OBLIQUE, startIdx, endIdx);
+		}
+		if (font.getUnderline() == Font.U_SINGLE) {
+			str.addAttribute(TextAttribute.UNDERLINE, TextAttribute.UNDERLINE_ON, startIdx, endIdx);
+		}
+	}
+
+	private static class AwtFontMetrics implements FontMetrics {
+		private final FontFingerprint fingerprint;
+		private final java.awt.Font font;
+		/** Ширины символов, NaN для ещё не измеренных символов */
+		private final float[] advances = new float[Character.MAX_VALUE + 1];
+		/** Средняя ширина символа, NaN - ещё не измерена */
+		private volatile double averageCharWidth = Double.NaN;
+
+		public AwtFontMetrics(FontFingerprint fingerprint) {
+			this.fingerprint = fingerprint;
+			Map<TextAttribute, Object> attributes = new HashMap<>();
+			attributes.put(TextAttribute.FAMILY, fingerprint.getFontName());
+			attributes.put(TextAttribute.SIZE, new Float(fingerprint.getFontHeightInPoints()));
+			if (fingerprint.getBoldweight() == Font.BOLDWEIGHT_BOLD) {
+				attributes.put(TextAttribute.WEIGHT, TextAttribute.WEIGHT_BOLD);
+			}
+			if (fingerprint.isItalic()) {
+				attributes.put(TextAttribute.POSTURE, TextAttribute.POSTURE_OBLIQUE);
+			}
+			this.font = new java.awt.Font(attributes);
+			Arrays.fill(advances, Float.NaN);
+		}
+
+		/**
+		 * Атрибуты шрифта задаются без последнего символа текста (так тексты измерялись
+		 * изначально), кроме односимвольных текстов, для которых такой диапазон пуст
+		 */
+		@Override
+		public double getStringWidth(String string) {
+			AttributedString str = new AttributedString(string);
+			copyAttributes(fingerprint, str, 0, Math.max(string.length() - 1, 1));
+			TextLayout layout = new TextLayout(str.getIterator(), FONT_RENDER_CONTEXT);
+			return layout.getBounds().getWidth();
+		}
+
+		/**
+		 * Ширина символа измеряется при первом обращении к нему. Параллельные вызовы могут
+		 * измерить один символ дважды, что безвредно, так как результат всегда один и тот же
+		 */
+		@Override
+		public float getCharAdvance(char c) {
+			float result = advances[c];
+			if (Float.isNaN(result)) {
+				result =
+						(float) font.getStringBounds(String.valueOf(c), FONT_RENDER_CONTEXT)
+								.getWidth();
+				advances[c] = result;
+			}
+			return result;
+		}
+
+		/** Измеряется при первом обращении, повторное измерение в параллельных вызовах безвредно */
+		@Override
+		public double getAverageCharWidth() {
+			double result = averageCharWidth;
+			if (Double.isNaN(result)) {
+				result = FontMetrics.super.getAverageCharWidth();
+				averageCharWidth = result;
+			}
+			return result;
+		}
+
+		@Override
+		public int getLinesCount(String string, float maxWidth) {
+			if (StringUtils.length(string) <= 1) {
+				return 1;
+			}
+			AttributedString str = new AttributedString(string);
+			copyAttributes(fingerprint, str, 0, string.length() - 1);
+			LineBreakMeasurer measurer =
+					new LineBreakMeasurer(str.getIterator(), FONT_RENDER_CONTEXT);
+			int result = 0;
+			while (measurer.nextLayout(maxWidth) != null) {
+				result++;
+			}
+			return result;
+		}
+	}
+
+}
@@ -0,0 +1,95 @@
+package aaa.utils.poi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Поток вывода в канал через буфер фиксированного размера в памяти вне кучи. Буферы берутся
+ * из общего пула и возвращаются в него при закрытии потока, поэтому запись большого
+ * документа не требует ни временного буфера вне кучи размером с документ (который выделяет
+ * канал при записи буфера из кучи), ни его повторного выделения при каждой записи.
+ * Закрытие потока не закрывает канал
+ */
+class ChannelOutputStream extends OutputStream {
+
+	/** Размер буфера записи в байтах */
+	static final int BUFFER_SIZE = 64 * 1024;
+
+	/** Свободные буферы записи */
+	private static final Queue<ByteBuffer> BUFFERS = new ConcurrentLinkedQueue<>();
+
+	private final WritableByteChannel channel;
+	private ByteBuffer buffer;
+
+	ChannelOutputStream(WritableByteChannel channel) {
+		this.channel = channel;
+		ByteBuffer pooled = BUFFERS.poll();
+		this.buffer = pooled != null ? pooled : ByteBuffer.allocateDirect(BUFFER_SIZE);
+	}
+
+	private ByteBuffer getBuffer() throws IOException {
+		if (buffer == null) {
+			throw new IOException("Stream closed"); //$NON-NLS-1$
+		}
+		return buffer;
+	}
+
+	private void drain() throws IOException {
+		ByteBuffer target = getBuffer();
+		target.flip();
+		while (target.hasRemaining()) {
+			channel.write(target);
+		}
+		target.clear();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ByteBuffer target = getBuffer();
+		if (!target.hasRemaining()) {
+			drain();
+		}
+		target.put((byte) b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ByteBuffer target = getBuffer();
+		int offset = off;
+		int remaining = len;
+		while (remaining > 0) {
+			if (!target.hasRemaining()) {
+				drain();
+			}
+			int count = Math.min(remaining, target.remaining());
+			target.put(b, offset, count);
+			offset += count;
+			remaining -= count;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		drain();
+	}
+
+	/** Запись остатка буфера и возврат буфера в пул, повторное закрытие ничего не делает */
+	@Override
+	public void close() throws IOException {
+		if (buffer == null) {
+			return;
+		}
+		try {
+			drain();
+		} finally {
+			buffer.clear();
+			BUFFERS.offer(buffer);
+			buffer = null;
+		}
+	}
+
+}
@@ -0,0 +1,200 @@
+package aaa.utils.poi;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellReference;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Шаблон документа, подготовленный для массового заполнения. При подготовке один раз
+ * разбираются ссылки именованных ячеек шаблона ({@link NamedCellIndex}), создаются
+ * отсутствующие именованные ячейки и заданные стили, строится индекс стилей шаблона,
+ * после чего шаблон сохраняется. Экземпляр документа получается разбором сохранённого
+ * шаблона, к которому привязываются готовые ссылки имён, так что заполнение экземпляра
+ * не требует ни поиска имён, ни разбора их формул, ни поиска стилей.
+ * <p>
+ * Подготовленный шаблон неизменяем и может использоваться из нескольких потоков,
+ * экземпляры документа независимы друг от друга
+ */
+public class CompiledTemplate {
+
+	private final WorkbookFormat format;
+	private final byte[] data;
+	private final NamedCellIndex names;
+	/** Индексы стилей шаблона по их слепкам; при совпадении слепков хранится наименьший индекс */
+	private final Map<StyleFingerprint, Short> styles = new HashMap<>();
+
+	private CompiledTemplate(Workbook template) throws IOException {
+		this.format = WorkbookFormat.of(template);
+		this.names = NamedCellIndex.of(template);
+		for (String name : names.getNames()) {
+			CellReference reference = names.getReference(name);
+			Row row = SSUtils.getOrCreateRow(names.getSheet(name), reference.getRow());
+			SSUtils.getOrCreateCell(row, reference.getCol());
+		}
+		List<StyleFingerprint> templateStyles = StyleTableFingerprint.of(template).getStyles();
+		for (int i = 0; i < templateStyles.size(); ++i) {
+			this.styles.putIfAbsent(templateStyles.get(i), (short) i);
+		}
+		this.data = SSUtils.flushWorkBook(template);
+	}
+
+	/** Подготовка шаблона XLS */
+	public static CompiledTemplate of(byte[] templateData) throws IOException {
+		return of(WorkbookFormat.HSSF.read(new ByteArrayInputStream(templateData)));
+	}
+
+	/**
+	 * Подготовка шаблона XLS с заранее созданными стилями (см.
+	 * {@link #of(Workbook, Collection)})
+	 */
+	public static CompiledTemplate of(byte[] templateData, Collection<StyleFingerprint> styles)
+			throws IOException {
+		return of(WorkbookFormat.HSSF.read(new ByteArrayInputStream(templateData)), styles);
+	}
+
+	/**
+	 * Подготовка шаблона. Книга шаблона дополняется отсутствующими именованными ячейками
+	 * и в дальнейшем не используется
+	 *
+	 * @param template
+	 *            Книга шаблона формата {@link WorkbookFormat#HSSF} или {@link WorkbookFormat#XSSF}
+	 */
+	public static CompiledTemplate of(Workbook template) throws IOException {
+		return of(template, Collections.<StyleFingerprint> emptyList());
+	}
+
+	/**
+	 * Подготовка шаблона с заранее созданными стилями
+	 * (см. {@link #fill(Map, Map)})
+	 *
+	 * @param template
+	 *            Книга шаблона формата {@link WorkbookFormat#HSSF} или {@link WorkbookFormat#XSSF}
+	 * @param styles
+	 *            Стили, используемые при заполнении экземпляров, отсутствующие в шаблоне стили
+	 *            создаются в нём
+	 */
+	public static CompiledTemplate of(Workbook template, Collection<StyleFingerprint> styles)
+			throws IOException {
+		if (WorkbookFormat.of(template) == WorkbookFormat.SXSSF) {
+			throw new IllegalArgumentException("Streaming workbook can't be a template"); //$NON-NLS-1$
+		}
+		StyleRegistry registry = StyleRegistry.of(template);
+		for (StyleFingerprint style : styles) {
+			registry.getOrCreateStyle(style);
+		}
+		return new CompiledTemplate(template);
+	}
+
+	public WorkbookFormat getFormat() {
+		return format;
+	}
+
+	/** Имена ячеек шаблона */
+	public Set<String> getNames() {
+		return names.getNames();
+	}
+
+	/** Новый незаполненный экземпляр документа */
+	public Workbook newInstance() throws IOException {
+		return format.read(new ByteArrayInputStream(data));
+	}
+
+	/** Индекс именованных ячеек экземпляра документа, полученного {@link #newInstance()} */
+	public NamedCellIndex getNamedCells(Workbook instance) {
+		return names.bind(instance);
+	}
+
+	/**
+	 * Стиль экземпляра документа, соответствующий слепку. Стили шаблона (в том числе
+	 * созданные при подготовке) находятся по индексу шаблона, иначе стиль ищется или создаётся
+	 * в экземпляре через {@link StyleRegistry}
+	 */
+	public CellStyle getStyle(Workbook instance, StyleFingerprint style) {
+		Short index = styles.get(style);
+		return index != null	? instance.getCellStyleAt(index)
+								: StyleRegistry.of(instance).getOrCreateStyle(style);
+	}
+
+	/** Новый экземпляр документа, заполненный значениями (см. {@link NamedCellIndex#fill(Map)}) */
+	public Workbook fill(Map<String, ?> values) throws IOException {
+		return fill(values, Collections.<String, StyleFingerprint> emptyMap());
+	}
+
+	/**
+	 * Новый экземпляр документа, заполненный значениями и стилями
+	 * (см. {@link NamedCellIndex#fill(Map, Map)})
+	 *
+	 * @param cellStyles
+	 *            Слепки стилей ячеек по именам (см. {@link #getStyle(Workbook, StyleFingerprint)})
+	 */
+	public Workbook fill(Map<String, ?> values, Map<String, StyleFingerprint> cellStyles)
+			throws IOException {
+		Workbook instance = newInstance();
+		Map<String, CellStyle> instanceStyles = new HashMap<>();
+		for (Map.Entry<String, StyleFingerprint> cellStyle : cellStyles.entrySet()) {
+			instanceStyles.put(cellStyle.getKey(), getStyle(instance, cellStyle.getValue()));
+		}
+		names.bind(instance).fill(values, instanceStyles);
+		return instance;
+	}
+
+	/** Содержимое нового экземпляра документа, заполненного значениями */
+	public byte[] stamp(Map<String, ?> values) throws IOException {
+		return SSUtils.flushWorkBook(fill(values));
+	}
+
+	/** Содержимое нового экземпляра документа, заполненного значениями и стилями */
+	public byte[] stamp(Map<String, ?> values, Map<String, StyleFingerprint> cellStyles)
+			throws IOException {
+		return SSUtils.flushWorkBook(fill(values, cellStyles));
+	}
+
+	/**
+	 * Запись нового экземпляра документа, заполненного значениями и стилями, в поток
+	 * (см. {@link SSUtils#flushWorkBook(Workbook, OutputStream)})
+	 */
+	public void stamp(	Map<String, ?> values,
+						Map<String, StyleFingerprint> cellStyles,
+						OutputStream outputStream) throws IOException {
+		SSUtils.flushWorkBook(fill(values, cellStyles), outputStream);
+	}
+
+	/**
+	 * Параллельное построение экземпляров документа: экземпляры разбираются, заполняются
+	 * и сохраняются в пуле потоков не более чем на lookAhead документов вперёд и возвращаются
+	 * в порядке следования значений. Ошибки чтения и записи выбрасываются из
+	 * {@link Iterator#next()} как {@link UncheckedIOException}
+	 *
+	 * @param values
+	 *            Значения ячеек документов
+	 */
+	public Iterator<byte[]> stampAll(	Iterator<? extends Map<String, ?>> values,
+										Executor executor,
+										int lookAhead) {
+		return new PrefetchIterator<>(values, this::stampUnchecked, executor, lookAhead);
+	}
+
+	private byte[] stampUnchecked(Map<String, ?> values) {
+		try {
+			return stamp(values);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+}
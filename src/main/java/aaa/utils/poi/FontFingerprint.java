@@ -0,0 +1,45 @@
+package aaa.utils.poi;
+
+import lombok.Value;
+import org.apache.poi.ss.usermodel.Font;
+
+/**
+ * Слепок описания шрифта: набор атрибутов, по которым {@link SSUtils#fontsEquals(Font, Font)}
+ * сравнивает шрифты. Может использоваться как ключ хеш-таблиц
+ */
+@Value
+public class FontFingerprint {
+
+	boolean italic;
+	boolean strikeout;
+	short boldweight;
+	short fontHeightInPoints;
+	short color;
+	String fontName;
+	short typeOffset;
+	byte underline;
+
+	public static FontFingerprint of(Font font) {
+		return font == null ? null : new FontFingerprint(	font.getItalic(),
+															font.getStrikeout(),
+															font.getBoldweight(),
+															font.getFontHeightInPoints(),
+															font.getColor(),
+															font.getFontName(),
+															font.getTypeOffset(),
+															font.getUnderline());
+	}
+
+	/** Применение атрибутов слепка к шрифту */
+	public void applyTo(Font font) {
+		font.setBoldweight(boldweight);
+		font.setColor(color);
+		font.setFontHeightInPoints(fontHeightInPoints);
+		font.setFontName(fontName);
+		font.setItalic(italic);
+		font.setStrikeout(strikeout);
+		font.setTypeOffset(typeOffset);
+		font.setUnderline(underline);
+	}
+
+}
@@ -0,0 +1,87 @@
+package aaa.utils.poi;
+
+/**
+ * Источник метрик шрифтов, по которым {@link org.apache.poi.ss.usermodel.HSSFExtraTools}
+ * измеряет тексты ячеек. Используемый источник задаётся через
+ * {@link org.apache.poi.ss.usermodel.HSSFExtraTools#setFontMetricsProvider(FontMetricsProvider)},
+ * либо регистрируется как сервис ({@link java.util.ServiceLoader}), по-умолчанию используется
+ * {@link AwtFontMetricsProvider}.
+ * <p>
+ * Реализации должны быть потокобезопасны
+ */
+public interface FontMetricsProvider {
+
+	/** Метрики заданного шрифта, реализации могут (и должны) кэшировать результат */
+	FontMetrics getFontMetrics(FontFingerprint font);
+
+	/** Метрики шрифта заданного размера и начертания, все размеры - в точках */
+	interface FontMetrics {
+
+		/** Текст, по которому определяется средняя ширина символа шрифта */
+		String AVERAGE_WIDTH_TEXT =
+				"asdaklsjdklsajd|wwwwwwwwwwwwwwwwwwwww!@#$%^&*()lkjsalkdjlsakjdlsakqiowuiobv[]z1234567890_+-="; //$NON-NLS-1$
+
+		/** Ширина текста, выведенного одной строкой */
+		double getStringWidth(String string);
+
+		/** Ширина символа (расстояние до начала следующего символа) */
+		float getCharAdvance(char c);
+
+		/** Количество строк, на которые разбивается абзац текста при заданной ширине */
+		int getLinesCount(String string, float maxWidth);
+
+		/**
+		 * Средняя ширина символа шрифта (по тексту {@link #AVERAGE_WIDTH_TEXT}), по которой
+		 * ширины столбцов в символах переводятся в точки. Вызывается при каждом измерении
+		 * ячейки, поэтому реализациям следует запоминать результат
+		 */
+		default double getAverageCharWidth() {
+			return getStringWidth(AVERAGE_WIDTH_TEXT) / AVERAGE_WIDTH_TEXT.length();
+		}
+
+		/**
+		 * Количество строк, на которые разбивается абзац текста при заданной ширине, при
+		 * "жадном" переносе по ширине символов: слова (с последующими пробелами) помещаются
+		 * в строку, пока умещаются, слово длиннее строки разбивается между символами
+		 */
+		default int getLinesCountFast(String string, float maxWidth) {
+			int result = 1;
+			float lineWidth = 0;
+			int length = string.length();
+			int wordStart = 0;
+			while (wordStart < length) {
+				int wordEnd = wordStart;
+				float wordWidth = 0;
+				while (wordEnd < length && !Character.isWhitespace(string.charAt(wordEnd))) {
+					wordWidth += getCharAdvance(string.charAt(wordEnd++));
+				}
+				int spaceEnd = wordEnd;
+				float spaceWidth = 0;
+				while (spaceEnd < length && Character.isWhitespace(string.charAt(spaceEnd))) {
+					spaceWidth += getCharAdvance(string.charAt(spaceEnd++));
+				}
+				if (lineWidth > 0 && lineWidth + wordWidth > maxWidth) {
+					result++;
+					lineWidth = 0;
+				}
+				if (wordWidth > maxWidth) {
+					for (int i = wordStart; i < wordEnd; ++i) {
+						float advance = getCharAdvance(string.charAt(i));
+						if (lineWidth > 0 && lineWidth + advance > maxWidth) {
+							result++;
+							lineWidth = 0;
+						}
+						lineWidth += advance;
+					}
+				} else {
+					lineWidth += wordWidth;
+				}
+				lineWidth += spaceWidth;
+				wordStart = spaceEnd;
+			}
+			return result;
+		}
+
+	}
+
+}
@@ -0,0 +1,110 @@
+package aaa.utils.poi;
+
+import lombok.Value;
+import org.apache.poi.ss.usermodel.HSSFExtraTools;
+import org.apache.poi.ss.usermodel.HSSFExtraTools.TextMeasurement;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+/**
+ * Ограниченный по размеру кэш количества строк, на которые разбивается текст ячейки при
+ * заданных шрифте и ширине (см. {@link HSSFExtraTools#calculateRowSize}). Позволяет не измерять
+ * повторно одинаковые тексты (подписи, коды, примечания), повторяющиеся в строках отчёта.
+ * При переполнении вытесняются тексты, к которым дольше всего не было обращений.
+ * <p>
+ * Кэш может создаваться на одно выравнивание высоты строк или использоваться совместно
+ * несколькими выравниваниями. Ширина текста учитывается с точностью до 1/100 точки.
+ * Кэш потокобезопасен
+ */
+public class LineCountCache {
+
+	/** Максимальное количество текстов в кэше по-умолчанию */
+	public static final int DEFAULT_MAX_SIZE = 10000;
+
+	/** Количество долей точки, с точностью до которых учитывается ширина текста */
+	private static final float WIDTH_QUANTUM = 100;
+
+	@Value
+	private static class Key {
+		String text;
+		FontFingerprint font;
+		int width;
+		TextMeasurement measurement;
+	}
+
+	private final Map<Key, Integer> entries;
+	private long hits = 0;
+	private long misses = 0;
+
+	public LineCountCache() {
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	public LineCountCache(int maxSize) {
+		entries = new LinkedHashMap<Key, Integer>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Integer> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Получение количества строк текста из кэша, при отсутствии в кэше оно вычисляется
+	 * (вне блокировки кэша) и сохраняется
+	 *
+	 * @param counter
+	 *            Функция вычисления количества строк текста
+	 */
+	public int getLinesCount(	String text,
+								FontFingerprint font,
+								float maxWidth,
+								TextMeasurement measurement,
+								IntSupplier counter) {
+		Key key = new Key(text, font, Math.round(maxWidth * WIDTH_QUANTUM), measurement);
+		synchronized (this) {
+			Integer result = entries.get(key);
+			if (result != null) {
+				hits++;
+				return result;
+			}
+			misses++;
+		}
+		int result = counter.getAsInt();
+		synchronized (this) {
+			entries.put(key, result);
+		}
+		return result;
+	}
+
+	/** Количество обращений, для которых результат был найден в кэше */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/** Количество обращений, для которых результат пришлось вычислить */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/** Доля обращений, для которых результат был найден в кэше */
+	public synchronized double getHitRate() {
+		return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+	}
+
+	/** Количество текстов в кэше */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "LineCountCache(size=" + entries.size() + ", hits=" + hits + ", misses=" + misses //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			+ ")"; //$NON-NLS-1$
+	}
+
+}
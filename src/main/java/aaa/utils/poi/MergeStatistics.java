@@ -0,0 +1,32 @@
+package aaa.utils.poi;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.experimental.FieldDefaults;
+
+/** Статистика соединения нескольких книг в одну (см. {@link SSUtils#collectToSingleWorkBook}) */
+@Getter
+@ToString
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class MergeStatistics {
+
+	/** Количество обработанных исходных книг */
+	int inputs;
+	/**
+	 * Количество исходных книг, для которых сбор стилей был пропущен, т.к. книга с такими же
+	 * таблицами шрифтов и стилей уже встречалась (см. {@link StyleTableFingerprint})
+	 */
+	int styleTableReuses;
+
+	void registerInput() {
+		inputs++;
+	}
+
+	void registerStyleTable(boolean reused) {
+		if (reused) {
+			styleTableReuses++;
+		}
+	}
+
+}
@@ -0,0 +1,104 @@
+package aaa.utils.poi;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Индекс объединённых ячеек листа для поиска области, содержащей заданную ячейку.
+ * Области распределяются по строкам, которые они покрывают, и внутри строки упорядочиваются
+ * по первому столбцу, поэтому поиск выполняется двоичным поиском по областям одной строки,
+ * а не перебором всех объединённых ячеек листа.
+ * <p>
+ * Индекс отражает состояние листа на момент построения и не отслеживает его изменения
+ */
+public class MergedRegionIndex {
+
+	private final List<CellRangeAddress> regions;
+	/** Области строки i - entries[rowStart[i]] .. entries[rowStart[i + 1] - 1] */
+	private final int[] rowStart;
+	/** Индексы областей (в порядке листа), упорядоченные внутри строки по первому столбцу */
+	private final int[] entries;
+	/** Наибольший последний столбец областей строки от её начала до текущего элемента */
+	private final int[] maxLastColumn;
+
+	private MergedRegionIndex(List<CellRangeAddress> regions) {
+		this.regions = regions;
+		int rowCount = 0;
+		for (CellRangeAddress region : regions) {
+			rowCount = Math.max(rowCount, region.getLastRow() + 1);
+		}
+		rowStart = new int[rowCount + 1];
+		for (CellRangeAddress region : regions) {
+			for (int row = Math.max(region.getFirstRow(), 0); row <= region.getLastRow(); ++row) {
+				rowStart[row + 1]++;
+			}
+		}
+		for (int row = 0; row < rowCount; ++row) {
+			rowStart[row + 1] += rowStart[row];
+		}
+		List<Integer> order = new ArrayList<>(regions.size());
+		for (int i = 0; i < regions.size(); ++i) {
+			order.add(i);
+		}
+		order.sort(Comparator.comparingInt(i -> regions.get(i).getFirstColumn()));
+		entries = new int[rowStart[rowCount]];
+		int[] filled = new int[rowCount];
+		for (int regionIndex : order) {
+			CellRangeAddress region = regions.get(regionIndex);
+			for (int row = Math.max(region.getFirstRow(), 0); row <= region.getLastRow(); ++row) {
+				entries[rowStart[row] + filled[row]++] = regionIndex;
+			}
+		}
+		maxLastColumn = new int[entries.length];
+		for (int row = 0; row < rowCount; ++row) {
+			for (int i = rowStart[row]; i < rowStart[row + 1]; ++i) {
+				int lastColumn = regions.get(entries[i]).getLastColumn();
+				maxLastColumn[i] =
+						i == rowStart[row] ? lastColumn : Math.max(maxLastColumn[i - 1], lastColumn);
+			}
+		}
+	}
+
+	public static MergedRegionIndex of(Sheet sheet) {
+		List<CellRangeAddress> regions = new ArrayList<>(sheet.getNumMergedRegions());
+		for (int i = 0; i < sheet.getNumMergedRegions(); ++i) {
+			regions.add(sheet.getMergedRegion(i));
+		}
+		return new MergedRegionIndex(regions);
+	}
+
+	/**
+	 * Поиск объединённых ячеек, содержащих заданную ячейку. Если таких областей несколько,
+	 * то возвращается первая из них в порядке листа, если таких областей нет, то возвращается null
+	 */
+	public CellRangeAddress find(int rowIndex, int columnIndex) {
+		if (rowIndex < 0 || rowIndex >= rowStart.length - 1) {
+			return null;
+		}
+		int first = rowStart[rowIndex];
+		// Поиск последней области строки, начинающейся не правее заданного столбца
+		int low = first;
+		int high = rowStart[rowIndex + 1] - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (regions.get(entries[middle]).getFirstColumn() <= columnIndex) {
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+		int result = -1;
+		for (int i = high; i >= first && maxLastColumn[i] >= columnIndex; --i) {
+			if (regions.get(entries[i]).getLastColumn() >= columnIndex
+				&& (result < 0 || entries[i] < result)) {
+				result = entries[i];
+			}
+		}
+		return result < 0 ? null : regions.get(result);
+	}
+
+}
@@ -0,0 +1,214 @@
+package aaa.utils.poi;
+
+import lombok.Value;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Name;
+import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.AreaReference;
+import org.apache.poi.ss.util.CellReference;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Индекс именованных ячеек книги: ссылки всех имён книги разбираются один раз при построении
+ * индекса, после чего поиск ячейки по имени не требует ни перебора имён книги, ни разбора
+ * формул имён (в отличие от {@link SSUtils#getNamedCell} и {@link SSUtils#setNamedCellValue}).
+ * Имя, ссылающееся на диапазон, указывает на первую ячейку диапазона
+ * (как в {@link SSUtils#getNamedCellRowIndex}), имена формул и имена с недействительными
+ * ссылками в индекс не входят. Имена сравниваются без учёта регистра, при повторе имени
+ * используется первое из них.
+ * <p>
+ * Индекс отражает имена книги на момент построения: имена, добавленные или изменённые после
+ * этого, в нём не учитываются
+ */
+public class NamedCellIndex {
+
+	@Value
+	private static class Entry {
+		int sheetIndex;
+		CellReference reference;
+	}
+
+	private final Workbook workbook;
+	/** Ссылки имён, не изменяются после построения индекса */
+	private final Map<String, Entry> entries;
+
+	private NamedCellIndex(Workbook workbook, Map<String, Entry> entries) {
+		this.workbook = workbook;
+		this.entries = entries;
+	}
+
+	/** Построение индекса имён книги */
+	public static NamedCellIndex of(Workbook workbook) {
+		Map<String, Entry> entries = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		for (int i = 0; i < workbook.getNumberOfNames(); ++i) {
+			Name name = workbook.getNameAt(i);
+			CellReference reference = getReference(name);
+			if (reference != null && reference.getSheetName() != null) {
+				int sheetIndex = workbook.getSheetIndex(reference.getSheetName());
+				if (sheetIndex >= 0) {
+					entries.putIfAbsent(name.getNameName(), new Entry(sheetIndex, reference));
+				}
+			}
+		}
+		return new NamedCellIndex(workbook, entries);
+	}
+
+	/**
+	 * Индекс тех же имён в другой книге с теми же листами и именами (например, в другом
+	 * экземпляре книги того же шаблона), ссылки имён повторно не разбираются
+	 */
+	public NamedCellIndex bind(Workbook otherWorkbook) {
+		return new NamedCellIndex(otherWorkbook, entries);
+	}
+
+	private static CellReference getReference(Name name) {
+		String formula = name.getRefersToFormula();
+		if (formula == null
+			|| name.isFunctionName()
+			|| name.isDeleted()
+			|| !AreaReference.isContiguous(formula)) {
+			return null;
+		}
+		try {
+			return new AreaReference(formula).getFirstCell();
+		} catch (IllegalArgumentException e) {
+			// Формула имени не является ссылкой на ячейки
+			return null;
+		}
+	}
+
+	public Workbook getWorkbook() {
+		return workbook;
+	}
+
+	/** Имена ячеек, входящие в индекс */
+	public Set<String> getNames() {
+		return Collections.unmodifiableSet(entries.keySet());
+	}
+
+	public boolean contains(String cellName) {
+		return entries.containsKey(cellName);
+	}
+
+	/** Ссылка на именованную ячейку, null - если имя отсутствует в индексе */
+	public CellReference getReference(String cellName) {
+		Entry entry = entries.get(cellName);
+		return entry == null ? null : entry.getReference();
+	}
+
+	/** Лист именованной ячейки, null - если имя отсутствует в индексе */
+	public Sheet getSheet(String cellName) {
+		Entry entry = entries.get(cellName);
+		return entry == null ? null : workbook.getSheetAt(entry.getSheetIndex());
+	}
+
+	/** Индекс строки именованной ячейки, -1 - если имя отсутствует в индексе */
+	public int getRowIndex(String cellName) {
+		Entry entry = entries.get(cellName);
+		return entry == null ? -1 : entry.getReference().getRow();
+	}
+
+	/** Индекс столбца именованной ячейки, -1 - если имя отсутствует в индексе */
+	public int getColumnIndex(String cellName) {
+		Entry entry = entries.get(cellName);
+		return entry == null ? -1 : entry.getReference().getCol();
+	}
+
+	/**
+	 * Именованная ячейка, null - если имя отсутствует в индексе или ячейка (строка) не создана
+	 * на листе
+	 */
+	public Cell getCell(String cellName) {
+		Entry entry = entries.get(cellName);
+		if (entry == null) {
+			return null;
+		}
+		Row row = workbook.getSheetAt(entry.getSheetIndex()).getRow(entry.getReference().getRow());
+		return row == null ? null : row.getCell(entry.getReference().getCol());
+	}
+
+	/** Установка значения именованной ячейки (см. {@link #setValue(String, Object, CellStyle)}) */
+	public boolean setValue(String cellName, Object value) {
+		return setValue(cellName, value, null);
+	}
+
+	/**
+	 * Установка значения и стиля именованной ячейки. Значение устанавливается в соответствии
+	 * с его типом: {@link String}, {@link RichTextString}, {@link Date}, {@link Calendar},
+	 * {@link Number} (как число с плавающей точкой) или {@link Boolean}
+	 *
+	 * @param style
+	 *            Стиль ячейки, null - стиль ячейки не изменяется
+	 * @return Установлено ли значение: значение null, а также имена, отсутствующие в индексе
+	 *         (как и в {@link SSUtils#setNamedCellValue}), пропускаются
+	 * @throws IllegalArgumentException
+	 *             Значение неподдерживаемого типа
+	 */
+	public boolean setValue(String cellName, Object value, CellStyle style) {
+		Cell cell = getCell(cellName);
+		if (cell == null || value == null) {
+			return false;
+		}
+		if (value instanceof String) {
+			SSUtils.setCellValue(cell, SSUtils.createRichTextString(workbook, (String) value));
+		} else if (value instanceof RichTextString) {
+			SSUtils.setCellValue(cell, (RichTextString) value);
+		} else if (value instanceof Date) {
+			cell.setCellValue((Date) value);
+		} else if (value instanceof Calendar) {
+			cell.setCellValue((Calendar) value);
+		} else if (value instanceof Number) {
+			cell.setCellValue(((Number) value).doubleValue());
+		} else if (value instanceof Boolean) {
+			cell.setCellValue((Boolean) value);
+		} else {
+			throw new IllegalArgumentException("Unsupported value type " + value.getClass()); //$NON-NLS-1$
+		}
+		if (style != null) {
+			cell.setCellStyle(style);
+		}
+		return true;
+	}
+
+	/**
+	 * Заполнение именованных ячеек значениями (см. {@link #setValue(String, Object, CellStyle)})
+	 *
+	 * @param values
+	 *            Значения ячеек по именам
+	 * @return Количество установленных значений
+	 */
+	public int fill(Map<String, ?> values) {
+		return fill(values, Collections.<String, CellStyle> emptyMap());
+	}
+
+	/**
+	 * Заполнение именованных ячеек значениями и стилями
+	 * (см. {@link #setValue(String, Object, CellStyle)})
+	 *
+	 * @param values
+	 *            Значения ячеек по именам
+	 * @param styles
+	 *            Стили ячеек по именам, стили ячеек, отсутствующих в перечне, не изменяются
+	 * @return Количество установленных значений
+	 */
+	public int fill(Map<String, ?> values, Map<String, ? extends CellStyle> styles) {
+		int result = 0;
+		for (Map.Entry<String, ?> value : values.entrySet()) {
+			if (setValue(value.getKey(), value.getValue(), styles.get(value.getKey()))) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,30 @@
+package aaa.utils.poi;
+
+import lombok.Builder;
+import lombok.Value;
+
+/** Параметры постраничного разбиения листа (см. {@link SSUtils#paginate(org.apache.poi.ss.usermodel.Sheet, Double, PaginationOptions)}) */
+@Value
+@Builder
+public class PaginationOptions {
+
+	/** Параметры по-умолчанию: без повторяющихся строк, существующие разрывы страниц удаляются */
+	public static final PaginationOptions DEFAULT = builder().build();
+
+	/**
+	 * Индекс первой строки, повторяемой в начале каждой страницы (заголовок),
+	 * если передано null, то повторяющихся строк нет
+	 */
+	Integer repeatingRowsFirst;
+	/**
+	 * Индекс последней строки, повторяемой в начале каждой страницы (заголовок),
+	 * если передано null, то повторяется только строка repeatingRowsFirst
+	 */
+	Integer repeatingRowsLast;
+	/**
+	 * Признак сохранения существующих разрывов страниц листа: если установлен, то
+	 * существующие разрывы остаются на месте и учитываются при разбиении, иначе удаляются
+	 */
+	boolean keepExistingBreaks;
+
+}
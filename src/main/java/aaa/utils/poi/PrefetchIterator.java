@@ -0,0 +1,73 @@
+package aaa.utils.poi;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Итератор, вычисляющий результаты для элементов исходного итератора параллельно
+ * (не более чем на заданное количество элементов вперёд) и возвращающий их в порядке
+ * следования исходных элементов.
+ * Исключения, возникшие при вычислении, выбрасываются из {@link #next()} без обёртки,
+ * при этом вычисления следующих элементов отменяются
+ */
+class PrefetchIterator<T, R> implements Iterator<R> {
+
+	private final Iterator<T> source;
+	private final Function<? super T, ? extends R> task;
+	private final Executor executor;
+	private final int lookAhead;
+	private final Deque<CompletableFuture<R>> window = new ArrayDeque<>();
+
+	PrefetchIterator(	Iterator<T> source,
+						Function<? super T, ? extends R> task,
+						Executor executor,
+						int lookAhead) {
+		this.source = source;
+		this.task = task;
+		this.executor = executor;
+		this.lookAhead = Math.max(lookAhead, 1);
+	}
+
+	private void fill() {
+		while (window.size() < lookAhead && source.hasNext()) {
+			T item = source.next();
+			window.add(CompletableFuture.supplyAsync(() -> task.apply(item), executor));
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		fill();
+		return !window.isEmpty();
+	}
+
+	@Override
+	public R next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		CompletableFuture<R> result = window.poll();
+		fill();
+		try {
+			return result.join();
+		} catch (CompletionException e) {
+			// Результаты, вычисляемые наперёд, после ошибки не понадобятся
+			window.forEach(f -> f.cancel(true));
+			window.clear();
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+package aaa.utils.poi;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Выборка строк листа, по которым выполняется измерение (например, при выравнивании ширины
+ * столбцов, см. {@link org.apache.poi.ss.usermodel.HSSFExtraTools#autoSizeColumns})
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class RowSampling {
+
+	/** Все строки листа */
+	public static final RowSampling ALL = new RowSampling(null, null);
+
+	/** Количество строк выборки, null - все строки */
+	Integer count;
+	/** Начальное значение генератора случайной выборки, null - выбираются первые строки */
+	Long seed;
+
+	/** Первые count строк листа */
+	public static RowSampling first(int count) {
+		return new RowSampling(count, null);
+	}
+
+	/**
+	 * Случайные count строк листа, выборка с одинаковым seed на одном и том же листе всегда
+	 * одинакова
+	 */
+	public static RowSampling random(int count, long seed) {
+		return new RowSampling(count, seed);
+	}
+
+	/** Строки листа, входящие в выборку, в порядке их следования на листе */
+	public Iterable<Row> select(Sheet sheet) {
+		if (count == null) {
+			return sheet;
+		}
+		List<Row> result = new ArrayList<>(Math.min(count, sheet.getPhysicalNumberOfRows()));
+		if (seed == null) {
+			for (Row row : sheet) {
+				if (result.size() >= count) {
+					break;
+				}
+				result.add(row);
+			}
+			return result;
+		}
+		// Выборка "резервуаром" за один проход по строкам
+		Random random = new Random(seed);
+		int index = 0;
+		for (Row row : sheet) {
+			if (result.size() < count) {
+				result.add(row);
+			} else {
+				int replaced = random.nextInt(index + 1);
+				if (replaced < count) {
+					result.set(replaced, row);
+				}
+			}
+			index++;
+		}
+		result.sort(Comparator.comparingInt(Row::getRowNum));
+		return result;
+	}
+
+}
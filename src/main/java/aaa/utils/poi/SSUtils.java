@@ -2,13 +2,19 @@ package aaa.utils.poi;
 
 import aaa.nvl.Nvl;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.poi.hssf.usermodel.HSSFRichTextString;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFStyleTableReader;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.hssf.usermodel.HeaderFooter;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.ClientAnchor;
+import org.apache.poi.ss.usermodel.Comment;
+import org.apache.poi.ss.usermodel.CreationHelper;
+import org.apache.poi.ss.usermodel.Drawing;
 import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.HSSFExtraTools;
+import org.apache.poi.ss.usermodel.HSSFExtraTools.TextMeasurement;
 import org.apache.poi.ss.usermodel.Name;
 import org.apache.poi.ss.usermodel.RichTextString;
 import org.apache.poi.ss.usermodel.Row;
@@ -21,19 +27,34 @@ import org.apache.poi.ss.util.CellReference;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.toList;
 
-/** Класс с функциями для работы с книгами XLS (на основании библиотеки Apache POI (HSSF) */
+/**
+ * Класс с функциями для работы с книгами XLS (на основании библиотеки Apache POI (HSSF).
+ * Книги, создаваемые функциями, по-умолчанию имеют формат XLS, при необходимости формат
+ * задаётся параметром {@link WorkbookFormat} (например, для потоковой записи больших книг XLSX)
+ */
 public class SSUtils {
 
 	/** Максимальное значение высоты страницы по-умолчанию */
@@ -71,7 +92,7 @@ public class SSUtils {
 	public static Cell createCustomCell(Row row, long column, CellStyle style, RichTextString value) {
 		Cell cell = getOrCreateCell(row, (short) column);
 		if (value != null) {
-			cell.setCellValue(value);
+			setCellValue(cell, value);
 		}
 		if (style != null) {
 			cell.setCellStyle(style);
@@ -80,7 +101,8 @@ public class SSUtils {
 	}
 
 	public static Cell createCustomCell(Row row, long column, CellStyle style, String value) {
-		return createCustomCell(row, column, style, new HSSFRichTextString(value));
+		RichTextString richTextString = createRichTextString(row.getSheet().getWorkbook(), value);
+		return createCustomCell(row, column, style, richTextString);
 	}
 
 	public static Cell createCustomCell(Row row, long column, CellStyle style, Long value) {
@@ -141,6 +163,24 @@ public class SSUtils {
 		getOrCreateCell(sheet, (int) row, (short) column).setCellValue((RichTextString) null);
 	}
 
+	/** Creates rich text string of the workbook format */
+	public static RichTextString createRichTextString(Workbook workbook, String value) {
+		return workbook.getCreationHelper().createRichTextString(value);
+	}
+
+	/**
+	 * Sets rich text value of the cell. A string created without text (for example, by
+	 * {@link #createRichTextString(Workbook, String)} from null) sets an empty string value in
+	 * every workbook format, as HSSF does: XSSF would make the cell blank instead
+	 */
+	static void setCellValue(Cell cell, RichTextString value) {
+		if (value.getString() == null) {
+			cell.setCellValue(createRichTextString(cell.getSheet().getWorkbook(), "")); //$NON-NLS-1$
+		} else {
+			cell.setCellValue(value);
+		}
+	}
+
 	/** Flushes workbook to byte array */
 	public static byte[] flushWorkBook(Workbook workBook) throws IOException {
 		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
@@ -149,6 +189,38 @@ public class SSUtils {
 		return outputStream.toByteArray();
 	}
 
+	/**
+	 * Writes workbook directly to the stream without intermediate byte array. The stream is
+	 * not closed by HSSF workbooks, but XSSF and SXSSF workbooks close it after writing
+	 */
+	public static void flushWorkBook(Workbook workBook, OutputStream outputStream)
+			throws IOException {
+		workBook.write(outputStream);
+	}
+
+	/**
+	 * Writes workbook to the channel through pooled direct buffer of fixed size, so neither
+	 * the whole workbook nor a direct buffer of the workbook size is kept in memory. The
+	 * channel is not closed
+	 */
+	public static void flushWorkBook(Workbook workBook, WritableByteChannel channel)
+			throws IOException {
+		try (OutputStream outputStream = new ChannelOutputStream(channel)) {
+			workBook.write(outputStream);
+		}
+	}
+
+	/** Writes workbook to the file, the file is created or truncated */
+	public static void flushWorkBook(Workbook workBook, Path path) throws IOException {
+		try (FileChannel channel =
+				FileChannel.open(	path,
+									StandardOpenOption.CREATE,
+									StandardOpenOption.TRUNCATE_EXISTING,
+									StandardOpenOption.WRITE)) {
+			flushWorkBook(workBook, channel);
+		}
+	}
+
 	/**
 	 * Add pages counter to single sheet of workbook
 	 * 
@@ -246,7 +318,9 @@ public class SSUtils {
 				.getRefersToFormula());
 	}
 
-	/** Get named cell value */
+	/**
+	 * Get named cell value. For repeated lookups in one workbook use {@link NamedCellIndex}
+	 */
 	public static Cell getNamedCell(Workbook workbook, String cellName) {
 		CellReference cellReference = getNamedCellReference(workbook, cellName);
 		return cellReference == null ? null : workbook.getSheet(cellReference.getSheetName())
@@ -260,7 +334,7 @@ public class SSUtils {
 											CellStyle style) {
 		Cell cell = getNamedCell(workbook, cellName);
 		if (cell != null && value != null) {
-			cell.setCellValue(value);
+			setCellValue(cell, value);
 			if (style != null) {
 				cell.setCellStyle(style);
 			}
@@ -271,11 +345,11 @@ public class SSUtils {
 											String cellName,
 											String value,
 											CellStyle style) {
-		setNamedCellValue(workbook, cellName, new HSSFRichTextString(value), style);
+		setNamedCellValue(workbook, cellName, createRichTextString(workbook, value), style);
 	}
 
 	public static void setNamedCellValue(Workbook workbook, String cellName, String value) {
-		setNamedCellValue(workbook, cellName, new HSSFRichTextString(value));
+		setNamedCellValue(workbook, cellName, createRichTextString(workbook, value));
 	}
 
 	public static void setNamedCellValue(Workbook workbook, String cellName, RichTextString value) {
@@ -350,27 +424,13 @@ public class SSUtils {
 			&& (font1.getUnderline() == font2.getUnderline());
 	}
 
-	/** Создание копии описания шрифта в другой рабочей книге */
+	/**
+	 * Создание копии описания шрифта в другой рабочей книге.
+	 * Если в целевой книге уже есть такой шрифт, то возвращается он
+	 * (поиск выполняется по индексу {@link StyleRegistry})
+	 */
 	public static Font copyFontTo(Font sourceFont, Workbook targetWorkbook) {
-		if (sourceFont == null) {
-			return null;
-		}
-		for (short i = 0; i < targetWorkbook.getNumberOfFonts(); ++i) {
-			Font font = targetWorkbook.getFontAt(i);
-			if (fontsEquals(font, sourceFont)) {
-				return font;
-			}
-		}
-		Font targetFont = targetWorkbook.createFont();
-		targetFont.setBoldweight(sourceFont.getBoldweight());
-		targetFont.setColor(sourceFont.getColor());
-		targetFont.setFontHeightInPoints(sourceFont.getFontHeightInPoints());
-		targetFont.setFontName(sourceFont.getFontName());
-		targetFont.setItalic(sourceFont.getItalic());
-		targetFont.setStrikeout(sourceFont.getStrikeout());
-		targetFont.setTypeOffset(sourceFont.getTypeOffset());
-		targetFont.setUnderline(sourceFont.getUnderline());
-		return targetFont;
+		return StyleRegistry.of(targetWorkbook).getOrCreateFont(FontFingerprint.of(sourceFont));
 	}
 
 	protected static Font getFont(Workbook workbook, CellStyle style) {
@@ -401,39 +461,89 @@ public class SSUtils {
 		public int columnOffset = 0;
 		public int numberInPage = 0;
 		public int numberInRow = 0;
+		public LayoutTracker layout = new LayoutTracker();
 	}
 
-	/** Создание копии стиля оформления в другой рабочей книге */
-	public static CellStyle copyStyleTo(Workbook sourceWorkbook,
-										CellStyle sourceStyle,
-										Workbook targetWorkbook) {
-		if (sourceStyle == null) {
-			return null;
+	/**
+	 * Геометрия целевого листа, отслеживаемая по мере добавления на него данных.
+	 * Позволяет принимать решения о размещении очередного листа без обхода всего целевого листа.
+	 * Подразумевается, что целевой лист изначально пуст и изменяется только при добавлении данных
+	 */
+	private static class LayoutTracker {
+		/** Высоты строк целевого листа (для несозданных строк - 0) */
+		private float[] rowHeights = new float[64];
+		private int lastRow = -1;
+		private int lastRowBreak = -1;
+		/** Сумма высот строк, следующих за последним разрывом страницы и предшествующих summedRow */
+		private double pageHeight = 0;
+		private int summedRow = 0;
+		/** Сумма ширин первых summedColumns столбцов целевого листа */
+		private double rowWidth = 0;
+		private int summedColumns = 0;
+
+		public void setRowHeight(int rowIndex, float height) {
+			if (rowIndex >= rowHeights.length) {
+				rowHeights = Arrays.copyOf(rowHeights, Math.max(rowHeights.length * 2, rowIndex + 1));
+			}
+			rowHeights[rowIndex] = height;
+			lastRow = Math.max(lastRow, rowIndex);
+			if (rowIndex > lastRowBreak && rowIndex < summedRow) {
+				// Изменена уже учтённая строка, сумма высот пересчитывается
+				pageHeight = 0;
+				summedRow = lastRowBreak + 1;
+			}
+		}
+
+		public void setRowBreak(int rowIndex) {
+			lastRowBreak = rowIndex;
+			pageHeight = 0;
+			summedRow = rowIndex + 1;
+		}
+
+		public int getLastRowBreak() {
+			return lastRowBreak;
 		}
-		for (short i = 0; i < targetWorkbook.getNumCellStyles(); ++i) {
-			CellStyle style = targetWorkbook.getCellStyleAt(i);
-			if (styleEquals(sourceWorkbook, sourceStyle, targetWorkbook, style)) {
-				return style;
+
+		/**
+		 * Высота части листа, следующей за последним разрывом страницы (аналогично
+		 * {@link SSUtils#getSheetHeightInPoints(Sheet, Integer, Integer)}).
+		 * Строки суммируются в порядке возрастания индексов, каждая - однократно
+		 */
+		public double getPageHeight() {
+			for (; summedRow <= lastRow; ++summedRow) {
+				pageHeight += rowHeights[summedRow];
 			}
+			return pageHeight;
 		}
 
-		CellStyle targetStyle = targetWorkbook.createCellStyle();
-		targetStyle.setAlignment(sourceStyle.getAlignment());
-		targetStyle.setBorderBottom(sourceStyle.getBorderBottom());
-		targetStyle.setBorderTop(sourceStyle.getBorderTop());
-		targetStyle.setBorderLeft(sourceStyle.getBorderLeft());
-		targetStyle.setBorderRight(sourceStyle.getBorderRight());
-		Font targetFont = copyFontTo(getFont(sourceWorkbook, sourceStyle), targetWorkbook);
-		if (targetFont != null) {
-			targetStyle.setFont(targetFont);
+		/**
+		 * Ширина столбцов целевого листа с 0 по lastColumnIndex (не включая), аналогично
+		 * {@link SSUtils#getSheetWidthInPoints(Sheet, Integer, Integer)}. Ширина уже учтённых
+		 * столбцов повторно не запрашивается: данные добавляются на лист слева направо,
+		 * поэтому ширина столбцов левее текущего смещения не меняется до перехода на новую строку
+		 */
+		public double getRowWidth(Sheet targetSheet, int lastColumnIndex) {
+			if (lastColumnIndex < summedColumns) {
+				rowWidth = 0;
+				summedColumns = 0;
+			}
+			for (; summedColumns < lastColumnIndex; ++summedColumns) {
+				rowWidth += Nvl.nvl(targetSheet.getColumnWidth(summedColumns), 0);
+			}
+			return rowWidth;
 		}
-		targetStyle.setFillBackgroundColor(sourceStyle.getFillBackgroundColor());
-		targetStyle.setFillForegroundColor(sourceStyle.getFillForegroundColor());
-		targetStyle.setIndention(sourceStyle.getIndention());
-		targetStyle.setRotation(sourceStyle.getRotation());
-		targetStyle.setVerticalAlignment(sourceStyle.getVerticalAlignment());
-		targetStyle.setWrapText(sourceStyle.getWrapText());
-		return targetStyle;
+	}
+
+	/**
+	 * Создание копии стиля оформления в другой рабочей книге.
+	 * Если в целевой книге уже есть такой стиль, то возвращается он
+	 * (поиск выполняется по индексу {@link StyleRegistry})
+	 */
+	public static CellStyle copyStyleTo(Workbook sourceWorkbook,
+										CellStyle sourceStyle,
+										Workbook targetWorkbook) {
+		return StyleRegistry.of(targetWorkbook)
+				.getOrCreateStyle(StyleFingerprint.of(sourceWorkbook, sourceStyle));
 	}
 
 	public static int getNextUncreatedRowIndex(Sheet sheet, boolean first) {
@@ -445,6 +555,53 @@ public class SSUtils {
 		public int maxColumnIndex = -1;
 	}
 
+	/** Размеры листа исходной книги, используемые при размещении его данных на целевом листе */
+	private static class SheetMetrics {
+		public boolean empty;
+		public int cellWidth;
+		public double widthInPoints;
+		public double heightInPoints;
+
+		public static SheetMetrics of(Sheet sheet) {
+			SheetMetrics result = new SheetMetrics();
+			result.empty = !sheet.rowIterator().hasNext();
+			if (!result.empty) {
+				SheetGeometry geometry = SheetGeometry.of(sheet);
+				result.cellWidth = geometry.getMaxColumnNumber();
+				result.widthInPoints = geometry.getWidthInPoints(0, result.cellWidth);
+				result.heightInPoints = geometry.getHeightInPoints();
+			}
+			return result;
+		}
+
+		public static SheetMetrics[] of(Workbook workbook) {
+			SheetMetrics[] result = new SheetMetrics[workbook.getNumberOfSheets()];
+			for (int i = 0; i < result.length; ++i) {
+				result[i] = of(workbook.getSheetAt(i));
+			}
+			return result;
+		}
+	}
+
+	/** Исходная книга, разобранная и предварительно измеренная для добавления на целевой лист */
+	private static class ParsedSource {
+		public Workbook workbook;
+		public StyleTableFingerprint styles;
+		public SheetMetrics[] sheets;
+
+		public static ParsedSource of(byte[] workbookData) {
+			try {
+				ParsedSource result = new ParsedSource();
+				result.workbook = new HSSFWorkbook(new ByteArrayInputStream(workbookData));
+				result.styles = StyleTableFingerprint.of(result.workbook);
+				result.sheets = SheetMetrics.of(result.workbook);
+				return result;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
 	/**
 	 * Добавление данных из некоторой книги Excel на заданный рабочий лист Excel.
 	 * Добавление происходит "в столбик".
@@ -452,14 +609,22 @@ public class SSUtils {
 	 * 
 	 * @param sourceWorkbook
 	 *            Исходная рабочая книга
+	 * @param sheetMetrics
+	 *            Размеры листов исходной книги, если передано null, то размеры
+	 *            определяются при добавлении каждого листа
 	 * @param targetSheet
 	 *            Лист на рабочей книге, на котором необходимо свести данные
 	 * @param targetWorkbook
 	 *            Целевая рабочая книга
+	 * @param styleTable
+	 *            Таблица соответствия стилей исходной книги стилям целевой книги
+	 *            (см. {@link #collectStylesToSingle(Workbook, Workbook)})
 	 */
 	private static boolean collectToSingle(	Workbook sourceWorkbook,
+											SheetMetrics[] sheetMetrics,
 											Sheet targetSheet,
 											Workbook targetWorkbook,
+											short[] styleTable,
 											boolean forcePageBreaks,
 											int maxPerPage,
 											int maxPerRow,
@@ -473,14 +638,15 @@ public class SSUtils {
 		boolean isFirst = first;
 		for (int i = 0; i < sourceWorkbook.getNumberOfSheets(); ++i) {
 			Sheet sourceSheet = sourceWorkbook.getSheetAt(i);
-			if (sourceSheet.rowIterator().hasNext()) {
-				int sourceSheetCellWidth = getMaxColumnNumber(sourceSheet);
-				double sourceSheetWidthInPoints =
-						getSheetWidthInPoints(sourceSheet, 0, sourceSheetCellWidth);
+			SheetMetrics metrics =
+					sheetMetrics != null ? sheetMetrics[i] : SheetMetrics.of(sourceSheet);
+			if (!metrics.empty) {
+				int sourceSheetCellWidth = metrics.cellWidth;
+				double sourceSheetWidthInPoints = metrics.widthInPoints;
 				offsets.numberInRow++;
 
 				if ((sourceSheetWidthInPoints
-					+ getSheetWidthInPoints(targetSheet, null, offsets.columnOffset - 1) > maxWidth)
+					+ offsets.layout.getRowWidth(targetSheet, offsets.columnOffset - 1) > maxWidth)
 					|| (offsets.numberInRow > maxPerRow) || forcePageBreaks) {
 					// Определение положения новых смещений для текущего элемента
 					offsets.rowOffset = getNextUncreatedRowIndex(targetSheet, first);
@@ -488,30 +654,29 @@ public class SSUtils {
 					offsets.numberInRow = 0;
 					offsets.numberInPage++;
 
-					double sourceSheetHeightInPoints = getSheetHeightInPoints(sourceSheet);
-					int[] targetRowBreakes = targetSheet.getRowBreaks();
-					double targetSheetHeightInPoints =
-							getSheetHeightInPoints(	targetSheet,
-													targetRowBreakes.length > 0	? (targetRowBreakes[targetRowBreakes.length - 1] + 1)
-																				: 0,
-													null);
+					double sourceSheetHeightInPoints = metrics.heightInPoints;
+					double targetSheetHeightInPoints = offsets.layout.getPageHeight();
 					if ((offsets.numberInPage == maxPerPage) || forcePageBreaks
 						|| (targetSheetHeightInPoints + sourceSheetHeightInPoints > maxHeight)) {
 						offsets.numberInPage = 0;
 						targetSheet.setRowBreak(targetSheet.getLastRowNum());
+						offsets.layout.setRowBreak(targetSheet.getLastRowNum());
 					}
 				}
 
 				// Копирование данных, размеров и стилей листа
 				for (Row row : sourceSheet) {
-					copyRow(sourceWorkbook,
-							targetSheet,
-							targetWorkbook,
-							columnSizingData,
-							sourceSheet,
-							row,
-							offsets.rowOffset,
-							offsets.columnOffset);
+					Row targetRow =
+							copyRow(sourceWorkbook,
+									targetSheet,
+									targetWorkbook,
+									styleTable,
+									columnSizingData,
+									sourceSheet,
+									row,
+									offsets.rowOffset,
+									offsets.columnOffset);
+					offsets.layout.setRowHeight(targetRow.getRowNum(), targetRow.getHeightInPoints());
 				}
 				applyMergedRegions(	targetSheet,
 									shiftRegions(	extractRegions(sourceSheet),
@@ -604,6 +769,9 @@ public class SSUtils {
 	 *            Целевой лист
 	 * @param targetWorkbook
 	 *            Целовая книга
+	 * @param styleTable
+	 *            Таблица соответствия стилей исходной книги стилям целевой книги,
+	 *            если передано null, то стили подбираются через {@link #copyStyleTo}
 	 * @param columnSizingData
 	 *            Структура содержащая информацию о назначении размеров столбцов
 	 *            целевого листа
@@ -612,10 +780,12 @@ public class SSUtils {
 	 * @param row
 	 *            Строка исходных данных, копирование которой необходимо
 	 *            осуществить
+	 * @return Строка целевого листа, либо null, если строка исходных данных не передана
 	 */
-	protected static void copyRow(	Workbook sourceWorkbook,
+	protected static Row copyRow(	Workbook sourceWorkbook,
 									Sheet targetSheet,
 									Workbook targetWorkbook,
+									short[] styleTable,
 									ColumnSizingData columnSizingData,
 									Sheet sourceSheet,
 									Row row,
@@ -628,13 +798,16 @@ public class SSUtils {
 				copyCell(	sourceWorkbook,
 							targetSheet,
 							targetWorkbook,
+							styleTable,
 							columnSizingData,
 							sourceSheet,
 							targetRow,
 							cell,
 							columnOffset);
 			}
+			return targetRow;
 		}
+		return null;
 	}
 
 	/**
@@ -646,6 +819,9 @@ public class SSUtils {
 	 *            Целевой лист
 	 * @param targetWorkbook
 	 *            Целовая книга
+	 * @param styleTable
+	 *            Таблица соответствия стилей исходной книги стилям целевой книги,
+	 *            если передано null, то стили подбираются через {@link #copyStyleTo}
 	 * @param columnSizingData
 	 *            Структура содержащая информацию о назначении размеров столбцов
 	 *            целевого листа
@@ -659,6 +835,7 @@ public class SSUtils {
 	protected static void copyCell(	Workbook sourceWorkbook,
 									Sheet targetSheet,
 									Workbook targetWorkbook,
+									short[] styleTable,
 									ColumnSizingData columnSizingData,
 									Sheet sourceSheet,
 									Row targetRow,
@@ -677,45 +854,104 @@ public class SSUtils {
 			}
 			Cell targetCell = getOrCreateCell(targetRow, targetCellColumnIndex);
 			if (cell.getCellComment() != null) {
-				targetCell.setCellComment(cell.getCellComment());
+				copyComment(cell.getCellComment(), targetSheet, targetWorkbook, targetCell);
 			}
 			CellStyle targetCellStyle =
-					copyStyleTo(sourceWorkbook, cell.getCellStyle(), targetWorkbook);
+					translateStyle(sourceWorkbook, cell.getCellStyle(), targetWorkbook, styleTable);
 			if (targetCellStyle != null) {
 				targetCell.setCellStyle(targetCellStyle);
 			}
-			int type = cell.getCellType();
-			targetCell.setCellType(type);
-			switch (type) {
-			case Cell.CELL_TYPE_BOOLEAN:
-				targetCell.setCellValue(cell.getBooleanCellValue());
-				break;
-			case Cell.CELL_TYPE_NUMERIC:
-				targetCell.setCellValue(cell.getNumericCellValue());
-				break;
-			case Cell.CELL_TYPE_STRING:
-			case Cell.CELL_TYPE_FORMULA:
-				targetCell.setCellValue(cell.getNumericCellValue());
-				break;
-			}
+			CellValueSnapshot.of(cell).applyTo(targetCell);
 		}
 	}
 
+	/**
+	 * Копирование примечания ячейки. Примечание книги XLS присваивается целевой ячейке
+	 * книги XLS, для книг других форматов создаётся новое примечание с тем же текстом и автором
+	 */
+	private static void copyComment(Comment comment,
+									Sheet targetSheet,
+									Workbook targetWorkbook,
+									Cell targetCell) {
+		if (WorkbookFormat.of(targetWorkbook) == WorkbookFormat.HSSF) {
+			targetCell.setCellComment(comment);
+			return;
+		}
+		CreationHelper creationHelper = targetWorkbook.getCreationHelper();
+		ClientAnchor anchor = creationHelper.createClientAnchor();
+		anchor.setRow1(targetCell.getRowIndex());
+		anchor.setRow2(targetCell.getRowIndex() + 3);
+		anchor.setCol1(targetCell.getColumnIndex() + 1);
+		anchor.setCol2(targetCell.getColumnIndex() + 3);
+		Comment targetComment = targetSheet.createDrawingPatriarch().createCellComment(anchor);
+		if (comment.getString() != null) {
+			targetComment.setString(creationHelper.createRichTextString(comment.getString()
+					.getString()));
+		}
+		targetComment.setAuthor(comment.getAuthor());
+		targetComment.setVisible(comment.isVisible());
+		targetComment.setRow(targetCell.getRowIndex());
+		targetComment.setColumn(targetCell.getColumnIndex());
+		targetCell.setCellComment(targetComment);
+	}
+
 	/**
 	 * Добавление стилей из одной книги в другую Функция нужна для обхода бага Excel:
 	 * при добавлении данных и стилей вперемежку и последующих открытия и сохрания файла
 	 * в MS Excel в файле слетает таблица стилей
+	 * 
+	 * @return Таблица соответствия стилей: по индексу стиля исходной книги содержит
+	 *         индекс соответствующего стиля целевой книги
+	 */
+	public static short[] collectStylesToSingle(Workbook sourceWorkbook, Workbook targetWorkbook) {
+		return collectStylesToSingle(sourceWorkbook, targetWorkbook, null);
+	}
+
+	/**
+	 * Добавление стилей из одной книги в другую (см. {@link #collectStylesToSingle(Workbook, Workbook)}).
+	 * Если книга с такими же таблицами шрифтов и стилей уже добавлялась в целевую книгу,
+	 * то повторно стили не собираются, а используется ранее построенная таблица соответствия
+	 * 
+	 * @param statistics
+	 *            Статистика соединения книг, в которой регистрируется переиспользование
+	 *            таблицы соответствия стилей, может быть null
 	 */
-	public static void collectStylesToSingle(Workbook sourceWorkbook, Workbook targetWorkbook) {
-		// Шрифты
-		for (short i = 0; i < sourceWorkbook.getNumberOfFonts(); ++i) {
-			copyFontTo(sourceWorkbook.getFontAt(i), targetWorkbook);
+	public static short[] collectStylesToSingle(Workbook sourceWorkbook,
+												Workbook targetWorkbook,
+												MergeStatistics statistics) {
+		return collectStylesToSingle(	StyleTableFingerprint.of(sourceWorkbook),
+										targetWorkbook,
+										statistics);
+	}
+
+	/**
+	 * Добавление в книгу стилей исходной книги, заданной слепком её таблиц шрифтов и стилей
+	 * (см. {@link #collectStylesToSingle(Workbook, Workbook, MergeStatistics)})
+	 */
+	public static short[] collectStylesToSingle(StyleTableFingerprint sourceStyles,
+												Workbook targetWorkbook,
+												MergeStatistics statistics) {
+		StyleRegistry registry = StyleRegistry.of(targetWorkbook);
+		short[] styleTable = registry.findStyleTable(sourceStyles);
+		if (statistics != null) {
+			statistics.registerStyleTable(styleTable != null);
 		}
-		// Стили
-		for (short i = 0; i < sourceWorkbook.getNumCellStyles(); ++i) {
-			copyStyleTo(sourceWorkbook, sourceWorkbook.getCellStyleAt(i), targetWorkbook);
+		return styleTable != null ? styleTable : registry.createStyleTable(sourceStyles);
+	}
 
+	/**
+	 * Получение стиля целевой книги, соответствующего стилю исходной книги.
+	 * При наличии таблицы соответствия стилей выполняется поиском по таблице,
+	 * иначе - через {@link #copyStyleTo}
+	 */
+	protected static CellStyle translateStyle(	Workbook sourceWorkbook,
+												CellStyle sourceStyle,
+												Workbook targetWorkbook,
+												short[] styleTable) {
+		if (sourceStyle != null && styleTable != null && sourceStyle.getIndex() < styleTable.length) {
+			return targetWorkbook.getCellStyleAt(styleTable[sourceStyle.getIndex()]);
 		}
+		return copyStyleTo(sourceWorkbook, sourceStyle, targetWorkbook);
 	}
 
 	public static byte[] collectToSingle(	List<byte[]> workbooks,
@@ -795,15 +1031,70 @@ public class SSUtils {
 																		: workbook);
 	}
 
+	/**
+	 * Функция сбора стилей ячеек из набора книг в новую книгу заданного формата
+	 * (см. {@link #collectStylesOnly(Iterator, Workbook)})
+	 */
+	public static Workbook collectStylesOnlyTo(	Iterator<byte[]> workbooksData,
+												WorkbookFormat format) throws IOException {
+		return collectStylesOnlyInner(workbooksData, format.create());
+	}
+
+	/**
+	 * Функция сбора стилей ячеек из набора книг в новую книгу XLS, книги читаются
+	 * из источников по одной (см. {@link #collectStylesOnly(Iterator, Workbook)})
+	 */
+	public static Workbook collectStylesOnly(Iterable<WorkbookSource> sources) throws IOException {
+		return collectStylesOnly(sources, null);
+	}
+
+	/**
+	 * Функция сбора стилей ячеек из набора книг, книги читаются из источников по одной
+	 * (см. {@link #collectStylesOnly(Iterator, Workbook)})
+	 */
+	public static Workbook collectStylesOnly(Iterable<WorkbookSource> sources, Workbook workbook)
+			throws IOException {
+		return collectSourceStylesOnly(	sources.iterator(),
+										workbook == null ? new HSSFWorkbook() : workbook);
+	}
+
+	/**
+	 * Функция сбора стилей ячеек из набора книг в новую книгу заданного формата, книги
+	 * читаются из источников по одной (см. {@link #collectStylesOnly(Iterator, Workbook)})
+	 */
+	public static Workbook collectStylesOnlyTo(	Iterable<WorkbookSource> sources,
+												WorkbookFormat format) throws IOException {
+		return collectSourceStylesOnly(sources.iterator(), format.create());
+	}
+
 	private static Workbook collectStylesOnlyInner(Iterator<byte[]> workbooksData, Workbook workbook)
 			throws IOException {
-		while (workbooksData.hasNext()) {
-			collectStylesToSingle(	new HSSFWorkbook(new ByteArrayInputStream(workbooksData.next())),
-									workbook);
+		return collectSourceStylesOnly(toSources(workbooksData), workbook);
+	}
+
+	private static Workbook collectSourceStylesOnly(Iterator<WorkbookSource> sources,
+													Workbook workbook) throws IOException {
+		while (sources.hasNext()) {
+			collectStylesToSingle(sources.next().readStyleTable(), workbook, null);
 		}
 		return workbook;
 	}
 
+	/** Представление содержимого книг в виде источников книг */
+	private static Iterator<WorkbookSource> toSources(Iterator<byte[]> workbooksData) {
+		return new Iterator<WorkbookSource>() {
+			@Override
+			public boolean hasNext() {
+				return workbooksData.hasNext();
+			}
+
+			@Override
+			public WorkbookSource next() {
+				return WorkbookSource.of(workbooksData.next());
+			}
+		};
+	}
+
 	/**
 	 * Функция осуществляющая соединение содержания нескольких книг в одну
 	 * 
@@ -827,22 +1118,280 @@ public class SSUtils {
 													boolean forcePageBreak,
 													Double maxPageHeightInPoints,
 													Double maxPageWidthInPoints) throws IOException {
-		Workbook targetWorkbook = new HSSFWorkbook();
+		return collectToSingleWorkBook(	workbooksData,
+										maxPerPage,
+										maxPerRow,
+										forcePageBreak,
+										maxPageHeightInPoints,
+										maxPageWidthInPoints,
+										null);
+	}
+
+	/**
+	 * Функция осуществляющая соединение содержания нескольких книг в одну
+	 * (см. {@link #collectToSingleWorkBook(Iterator, Integer, Integer, boolean, Double, Double)})
+	 * 
+	 * @param statistics
+	 *            Статистика соединения книг, заполняемая в процессе соединения, может быть null
+	 */
+	public static Workbook collectToSingleWorkBook(	Iterator<byte[]> workbooksData,
+													Integer maxPerPage,
+													Integer maxPerRow,
+													boolean forcePageBreak,
+													Double maxPageHeightInPoints,
+													Double maxPageWidthInPoints,
+													MergeStatistics statistics) throws IOException {
+		return collectToSingleWorkBook(	workbooksData,
+										maxPerPage,
+										maxPerRow,
+										forcePageBreak,
+										maxPageHeightInPoints,
+										maxPageWidthInPoints,
+										statistics,
+										WorkbookFormat.HSSF);
+	}
+
+	/**
+	 * Функция осуществляющая соединение содержания нескольких книг в новую книгу заданного
+	 * формата (см. {@link #collectToSingleWorkBook(Iterator, Integer, Integer, boolean, Double, Double, MergeStatistics)}).
+	 * Исходные книги должны иметь формат XLS
+	 * 
+	 * @param format
+	 *            Формат целевой книги. Для {@link WorkbookFormat#SXSSF} элементы,
+	 *            размещаемые в одном ряду (maxPerRow больше 1), не должны превышать
+	 *            по высоте окно строк книги
+	 */
+	public static Workbook collectToSingleWorkBook(	Iterator<byte[]> workbooksData,
+													Integer maxPerPage,
+													Integer maxPerRow,
+													boolean forcePageBreak,
+													Double maxPageHeightInPoints,
+													Double maxPageWidthInPoints,
+													MergeStatistics statistics,
+													WorkbookFormat format) throws IOException {
+		return collectSourcesToSingleWorkBook(	toSources(workbooksData),
+												maxPerPage,
+												maxPerRow,
+												forcePageBreak,
+												maxPageHeightInPoints,
+												maxPageWidthInPoints,
+												statistics,
+												format);
+	}
+
+	/**
+	 * Функция осуществляющая соединение содержания нескольких книг в одну, книги читаются
+	 * из источников (например, файлов {@link WorkbookSource#of(java.nio.file.Path)}) без
+	 * предварительной загрузки их содержимого в память
+	 * (см. {@link #collectToSingleWorkBook(Iterator, Integer, Integer, boolean, Double, Double)})
+	 */
+	public static Workbook collectToSingleWorkBook(	Iterable<WorkbookSource> sources,
+													Integer maxPerPage,
+													Integer maxPerRow,
+													boolean forcePageBreak,
+													Double maxPageHeightInPoints,
+													Double maxPageWidthInPoints) throws IOException {
+		return collectToSingleWorkBook(	sources,
+										maxPerPage,
+										maxPerRow,
+										forcePageBreak,
+										maxPageHeightInPoints,
+										maxPageWidthInPoints,
+										null,
+										WorkbookFormat.HSSF);
+	}
+
+	/**
+	 * Функция осуществляющая соединение содержания нескольких книг в новую книгу заданного
+	 * формата, книги читаются из источников
+	 * (см. {@link #collectToSingleWorkBook(Iterator, Integer, Integer, boolean, Double, Double, MergeStatistics, WorkbookFormat)}).
+	 * Соединение выполняется в потоковом режиме со сбором стилей до начала копирования
+	 * (см. {@link #collectSourcesToSingleWorkBookStreaming}), поэтому в памяти одновременно
+	 * находится только одна исходная книга, а результат совпадает с результатом соединения
+	 * содержимого тех же книг
+	 */
+	public static Workbook collectToSingleWorkBook(	Iterable<WorkbookSource> sources,
+													Integer maxPerPage,
+													Integer maxPerRow,
+													boolean forcePageBreak,
+													Double maxPageHeightInPoints,
+													Double maxPageWidthInPoints,
+													MergeStatistics statistics,
+													WorkbookFormat format) throws IOException {
+		return collectSourcesToSingleWorkBookStreaming(	sources,
+														maxPerPage,
+														maxPerRow,
+														forcePageBreak,
+														maxPageHeightInPoints,
+														maxPageWidthInPoints,
+														true,
+														statistics,
+														format);
+	}
+
+	private static Workbook collectSourcesToSingleWorkBook(	Iterator<WorkbookSource> sources,
+															Integer maxPerPage,
+															Integer maxPerRow,
+															boolean forcePageBreak,
+															Double maxPageHeightInPoints,
+															Double maxPageWidthInPoints,
+															MergeStatistics statistics,
+															WorkbookFormat format)
+			throws IOException {
+		Workbook targetWorkbook = format.create();
 		Sheet targetSheet = targetWorkbook.createSheet("Лист"); //$NON-NLS-1$
 		List<Workbook> workbooks = new ArrayList<>();
-		while (workbooksData.hasNext()) {
-			Workbook sourceWorkbook =
-					new HSSFWorkbook(new ByteArrayInputStream(workbooksData.next()));
+		List<short[]> styleTables = new ArrayList<>();
+		while (sources.hasNext()) {
+			WorkbookSource source = sources.next();
+			Workbook sourceWorkbook = source.readWorkbook();
 			workbooks.add(sourceWorkbook);
-			collectStylesToSingle(sourceWorkbook, targetWorkbook);
+			styleTables.add(collectStylesToSingle(	source.getStyleTable(sourceWorkbook),
+													targetWorkbook,
+													statistics));
+			if (statistics != null) {
+				statistics.registerInput();
+			}
 		}
 		OffsetHolder offsets = new OffsetHolder();
 		boolean first = true;
-		for (Workbook sourceWorkbook : workbooks) {
+		for (int i = 0; i < workbooks.size(); ++i) {
+			first =
+					collectToSingle(workbooks.get(i),
+									null,
+									targetSheet,
+									targetWorkbook,
+									styleTables.get(i),
+									forcePageBreak,
+									maxPerPage,
+									maxPerRow,
+									maxPageHeightInPoints,
+									maxPageWidthInPoints,
+									offsets,
+									first);
+		}
+		return targetWorkbook;
+	}
+
+	/**
+	 * Функция осуществляющая соединение содержания нескольких книг в одну в потоковом режиме:
+	 * исходные книги разбираются, копируются и освобождаются по одной, поэтому в памяти
+	 * одновременно находятся только целевая книга и одна исходная
+	 * (в отличие от {@link #collectToSingleWorkBook(Iterator, Integer, Integer, boolean, Double, Double)},
+	 * где до начала копирования разбираются все исходные книги)
+	 * 
+	 * @param workbooksData
+	 *            Список книг, содержимое которых необходимо соединить
+	 * @param collectStylesFirst
+	 *            Собрать стили всех книг до начала копирования данных (см.
+	 *            {@link #collectStylesToSingle(Workbook, Workbook)}). Для этого выполняется
+	 *            дополнительный проход по списку книг, при котором читаются только таблицы
+	 *            шрифтов и стилей ({@link HSSFStyleTableReader}). Если передано true,
+	 *            то результат совпадает с результатом
+	 *            {@link #collectToSingleWorkBook(Iterator, Integer, Integer, boolean, Double, Double)}
+	 * @param statistics
+	 *            Статистика соединения книг, заполняемая в процессе соединения, может быть null
+	 * @see #collectToSingleWorkBook(Iterator, Integer, Integer, boolean, Double, Double)
+	 */
+	public static Workbook collectToSingleWorkBookStreaming(Iterable<byte[]> workbooksData,
+															Integer maxPerPage,
+															Integer maxPerRow,
+															boolean forcePageBreak,
+															Double maxPageHeightInPoints,
+															Double maxPageWidthInPoints,
+															boolean collectStylesFirst,
+															MergeStatistics statistics)
+			throws IOException {
+		return collectToSingleWorkBookStreaming(workbooksData,
+												maxPerPage,
+												maxPerRow,
+												forcePageBreak,
+												maxPageHeightInPoints,
+												maxPageWidthInPoints,
+												collectStylesFirst,
+												statistics,
+												WorkbookFormat.HSSF);
+	}
+
+	/**
+	 * Функция осуществляющая соединение содержания нескольких книг в новую книгу заданного
+	 * формата в потоковом режиме (см.
+	 * {@link #collectToSingleWorkBookStreaming(Iterable, Integer, Integer, boolean, Double, Double, boolean, MergeStatistics)}).
+	 * В сочетании с {@link WorkbookFormat#SXSSF} объём используемой памяти не зависит
+	 * от количества соединяемых книг
+	 * 
+	 * @param format
+	 *            Формат целевой книги (см.
+	 *            {@link #collectToSingleWorkBook(Iterator, Integer, Integer, boolean, Double, Double, MergeStatistics, WorkbookFormat)})
+	 */
+	public static Workbook collectToSingleWorkBookStreaming(Iterable<byte[]> workbooksData,
+															Integer maxPerPage,
+															Integer maxPerRow,
+															boolean forcePageBreak,
+															Double maxPageHeightInPoints,
+															Double maxPageWidthInPoints,
+															boolean collectStylesFirst,
+															MergeStatistics statistics,
+															WorkbookFormat format)
+			throws IOException {
+		return collectSourcesToSingleWorkBookStreaming(	() -> toSources(workbooksData.iterator()),
+														maxPerPage,
+														maxPerRow,
+														forcePageBreak,
+														maxPageHeightInPoints,
+														maxPageWidthInPoints,
+														collectStylesFirst,
+														statistics,
+														format);
+	}
+
+	/**
+	 * Функция осуществляющая соединение содержания нескольких книг, читаемых из источников,
+	 * в новую книгу заданного формата в потоковом режиме: каждая книга читается из источника
+	 * только при её копировании и освобождается после него, поэтому в памяти одновременно
+	 * находятся только целевая книга и одна исходная (см.
+	 * {@link #collectToSingleWorkBookStreaming(Iterable, Integer, Integer, boolean, Double, Double, boolean, MergeStatistics, WorkbookFormat)})
+	 * 
+	 * @param sources
+	 *            Источники книг, содержимое которых необходимо соединить. При сборе стилей
+	 *            до начала копирования из каждого источника сначала читаются таблицы стилей
+	 *            ({@link WorkbookSource#readStyleTable()}), затем книга
+	 *            ({@link WorkbookSource#readWorkbook()})
+	 */
+	public static Workbook collectSourcesToSingleWorkBookStreaming(	Iterable<WorkbookSource> sources,
+																	Integer maxPerPage,
+																	Integer maxPerRow,
+																	boolean forcePageBreak,
+																	Double maxPageHeightInPoints,
+																	Double maxPageWidthInPoints,
+																	boolean collectStylesFirst,
+																	MergeStatistics statistics,
+																	WorkbookFormat format)
+			throws IOException {
+		Workbook targetWorkbook = format.create();
+		Sheet targetSheet = targetWorkbook.createSheet("Лист"); //$NON-NLS-1$
+		if (collectStylesFirst) {
+			for (WorkbookSource source : sources) {
+				collectStylesToSingle(source.readStyleTable(), targetWorkbook, statistics);
+			}
+		}
+		OffsetHolder offsets = new OffsetHolder();
+		boolean first = true;
+		for (WorkbookSource source : sources) {
+			Workbook sourceWorkbook = source.readWorkbook();
+			short[] styleTable =
+					collectStylesToSingle(	source.getStyleTable(sourceWorkbook),
+											targetWorkbook,
+											collectStylesFirst ? null : statistics);
+			if (statistics != null) {
+				statistics.registerInput();
+			}
 			first =
 					collectToSingle(sourceWorkbook,
+									null,
 									targetSheet,
 									targetWorkbook,
+									styleTable,
 									forcePageBreak,
 									maxPerPage,
 									maxPerRow,
@@ -854,6 +1403,142 @@ public class SSUtils {
 		return targetWorkbook;
 	}
 
+	/**
+	 * Функция осуществляющая соединение содержания нескольких книг в одну с параллельным
+	 * разбором исходных книг: разбор и предварительное измерение книг (слепки таблиц стилей,
+	 * размеры листов) выполняются в пуле потоков с ограниченным упреждением, а копирование
+	 * в целевую книгу - в вызывающем потоке в исходном порядке книг.
+	 * Результат совпадает с результатом
+	 * {@link #collectToSingleWorkBook(Iterator, Integer, Integer, boolean, Double, Double)}
+	 * 
+	 * @param workbooksData
+	 *            Список книг, содержимое которых необходимо соединить (проходится дважды:
+	 *            сначала собираются стили, затем данные)
+	 * @param executor
+	 *            Пул потоков, в котором выполняется разбор исходных книг
+	 * @param lookAhead
+	 *            Максимальное количество книг, разбираемых с упреждением
+	 *            (ограничивает количество одновременно находящихся в памяти исходных книг)
+	 * @param statistics
+	 *            Статистика соединения книг, заполняемая в процессе соединения, может быть null
+	 */
+	public static Workbook collectToSingleWorkBookParallel(	Iterable<byte[]> workbooksData,
+															Integer maxPerPage,
+															Integer maxPerRow,
+															boolean forcePageBreak,
+															Double maxPageHeightInPoints,
+															Double maxPageWidthInPoints,
+															Executor executor,
+															int lookAhead,
+															MergeStatistics statistics)
+			throws IOException {
+		return collectToSingleWorkBookParallel(	workbooksData,
+												maxPerPage,
+												maxPerRow,
+												forcePageBreak,
+												maxPageHeightInPoints,
+												maxPageWidthInPoints,
+												executor,
+												lookAhead,
+												statistics,
+												WorkbookFormat.HSSF);
+	}
+
+	/**
+	 * Функция осуществляющая соединение содержания нескольких книг в новую книгу заданного
+	 * формата с параллельным разбором исходных книг (см.
+	 * {@link #collectToSingleWorkBookParallel(Iterable, Integer, Integer, boolean, Double, Double, Executor, int, MergeStatistics)})
+	 * 
+	 * @param format
+	 *            Формат целевой книги (см.
+	 *            {@link #collectToSingleWorkBook(Iterator, Integer, Integer, boolean, Double, Double, MergeStatistics, WorkbookFormat)})
+	 */
+	public static Workbook collectToSingleWorkBookParallel(	Iterable<byte[]> workbooksData,
+															Integer maxPerPage,
+															Integer maxPerRow,
+															boolean forcePageBreak,
+															Double maxPageHeightInPoints,
+															Double maxPageWidthInPoints,
+															Executor executor,
+															int lookAhead,
+															MergeStatistics statistics,
+															WorkbookFormat format)
+			throws IOException {
+		Workbook targetWorkbook = format.create();
+		Sheet targetSheet = targetWorkbook.createSheet("Лист"); //$NON-NLS-1$
+		try {
+			Iterator<StyleTableFingerprint> styles =
+					new PrefetchIterator<>(	workbooksData.iterator(),
+											SSUtils::readStyleTable,
+											executor,
+											lookAhead);
+			while (styles.hasNext()) {
+				collectStylesToSingle(styles.next(), targetWorkbook, statistics);
+			}
+			Iterator<ParsedSource> sources =
+					new PrefetchIterator<>(	workbooksData.iterator(),
+											ParsedSource::of,
+											executor,
+											lookAhead);
+			OffsetHolder offsets = new OffsetHolder();
+			boolean first = true;
+			while (sources.hasNext()) {
+				ParsedSource source = sources.next();
+				if (statistics != null) {
+					statistics.registerInput();
+				}
+				first =
+						collectToSingle(source.workbook,
+										source.sheets,
+										targetSheet,
+										targetWorkbook,
+										collectStylesToSingle(source.styles, targetWorkbook, null),
+										forcePageBreak,
+										maxPerPage,
+										maxPerRow,
+										maxPageHeightInPoints,
+										maxPageWidthInPoints,
+										offsets,
+										first);
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return targetWorkbook;
+	}
+
+	/**
+	 * Функция осуществляющая соединение содержания нескольких книг в одну с параллельным
+	 * разбором исходных книг в общем пуле потоков {@link ForkJoinPool#commonPool()}
+	 * (см. {@link #collectToSingleWorkBookParallel(Iterable, Integer, Integer, boolean, Double, Double, Executor, int, MergeStatistics)})
+	 */
+	public static Workbook collectToSingleWorkBookParallel(	Iterable<byte[]> workbooksData,
+															Integer maxPerPage,
+															Integer maxPerRow,
+															boolean forcePageBreak,
+															Double maxPageHeightInPoints,
+															Double maxPageWidthInPoints)
+			throws IOException {
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		return collectToSingleWorkBookParallel(	workbooksData,
+												maxPerPage,
+												maxPerRow,
+												forcePageBreak,
+												maxPageHeightInPoints,
+												maxPageWidthInPoints,
+												pool,
+												pool.getParallelism() * 2,
+												null);
+	}
+
+	private static StyleTableFingerprint readStyleTable(byte[] workbookData) {
+		try {
+			return HSSFStyleTableReader.read(workbookData);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
 	public static byte[] collectToSingle(	Iterator<byte[]> workbooks,
 											Integer maxPerPage,
 											Integer maxPerRow,
@@ -868,12 +1553,71 @@ public class SSUtils {
 																maxPageWidthInPoints));
 	}
 
+	/**
+	 * Соединение нескольких книг, читаемых из источников, в одну
+	 * (см. {@link #collectToSingleWorkBook(Iterable, Integer, Integer, boolean, Double, Double)})
+	 */
+	public static byte[] collectToSingle(	Iterable<WorkbookSource> sources,
+											Integer maxPerPage,
+											Integer maxPerRow,
+											boolean forcePageBreak,
+											Double maxPageHeightInPoints,
+											Double maxPageWidthInPoints) throws IOException {
+		return flushWorkBook(collectToSingleWorkBook(	sources,
+														maxPerPage,
+														maxPerRow,
+														forcePageBreak,
+														maxPageHeightInPoints,
+														maxPageWidthInPoints));
+	}
+
+	/**
+	 * Соединение нескольких книг в одну с записью результата непосредственно в поток, без
+	 * промежуточного массива байт (см. {@link #flushWorkBook(Workbook, OutputStream)})
+	 */
+	public static void collectToSingle(	Iterator<byte[]> workbooks,
+										Integer maxPerPage,
+										Integer maxPerRow,
+										boolean forcePageBreak,
+										Double maxPageHeightInPoints,
+										Double maxPageWidthInPoints,
+										OutputStream outputStream) throws IOException {
+		flushWorkBook(	collectToSingleWorkBook(workbooks,
+												maxPerPage,
+												maxPerRow,
+												forcePageBreak,
+												maxPageHeightInPoints,
+												maxPageWidthInPoints),
+						outputStream);
+	}
+
+	/**
+	 * Соединение нескольких книг в одну с записью результата в файл
+	 * (см. {@link #flushWorkBook(Workbook, Path)})
+	 */
+	public static void collectToSingle(	Iterator<byte[]> workbooks,
+										Integer maxPerPage,
+										Integer maxPerRow,
+										boolean forcePageBreak,
+										Double maxPageHeightInPoints,
+										Double maxPageWidthInPoints,
+										Path path) throws IOException {
+		flushWorkBook(	collectToSingleWorkBook(workbooks,
+												maxPerPage,
+												maxPerRow,
+												forcePageBreak,
+												maxPageHeightInPoints,
+												maxPageWidthInPoints),
+						path);
+	}
+
 	public static double getSheetHeightInPoints(Sheet sheet) {
 		return getSheetHeightInPoints(sheet, null, null);
 	}
 
 	/**
-	 * Определение высоты листа в точках
+	 * Определение высоты листа в точках.
+	 * Для многократных измерений одного листа следует использовать {@link SheetGeometry}
 	 * 
 	 * @param sheet
 	 *            Лист, высоту которогу нужно измерить
@@ -906,7 +1650,8 @@ public class SSUtils {
 	}
 
 	/**
-	 * Определение ширины листа в точках
+	 * Определение ширины листа в точках.
+	 * Для многократных измерений одного листа следует использовать {@link SheetGeometry}
 	 * 
 	 * @param sheet
 	 *            Лист, ширину которогу нужно измерить
@@ -942,11 +1687,52 @@ public class SSUtils {
 
 	/** Процедура выполняет автоматическое изменение высоты всех строк на листе так, чтобы текст был полностью виден */
 	public static void autoSizeRows(Sheet sheet, Workbook workbook) {
+		autoSizeRows(sheet, workbook, TextMeasurement.EXACT);
+	}
+
+	/**
+	 * Автоматическое изменение высоты всех строк на листе с заданным способом измерения текста
+	 * (см. {@link TextMeasurement})
+	 */
+	public static void autoSizeRows(Sheet sheet, Workbook workbook, TextMeasurement measurement) {
+		autoSizeRows(sheet, workbook, measurement, new LineCountCache());
+	}
+
+	/**
+	 * Автоматическое изменение высоты всех строк на листе с заданным способом измерения текста
+	 * и кэшем количества строк текстов (см. {@link LineCountCache})
+	 */
+	public static void autoSizeRows(	Sheet sheet,
+									Workbook workbook,
+									TextMeasurement measurement,
+									LineCountCache lineCounts) {
+		MergedRegionIndex mergedRegions = MergedRegionIndex.of(sheet);
 		for (Row row : sheet) {
-			HSSFExtraTools.autoSizeRow(workbook, sheet, row, true);
+			HSSFExtraTools.autoSizeRow(workbook, sheet, row, mergedRegions, measurement, lineCounts);
 		}
 	}
 
+	/**
+	 * Автоматическое изменение высоты всех строк на листе (см. {@link #autoSizeRows(Sheet, Workbook)})
+	 * с параллельным измерением текста строк в заданном пуле потоков
+	 */
+	public static void autoSizeRowsParallel(Sheet sheet, Workbook workbook, ForkJoinPool pool) {
+		HSSFExtraTools.autoSizeRows(workbook,
+									sheet,
+									MergedRegionIndex.of(sheet),
+									pool,
+									TextMeasurement.EXACT,
+									new LineCountCache());
+	}
+
+	/**
+	 * Автоматическое изменение высоты всех строк на листе с параллельным измерением текста строк
+	 * в общем пуле потоков {@link ForkJoinPool#commonPool()}
+	 */
+	public static void autoSizeRowsParallel(Sheet sheet, Workbook workbook) {
+		autoSizeRowsParallel(sheet, workbook, ForkJoinPool.commonPool());
+	}
+
 	/** Получение самого большого индекса столбца на листе */
 	public static int getLastColumnNum(Sheet sheet) {
 		int result = -1;
@@ -957,81 +1743,537 @@ public class SSUtils {
 
 	}
 
+	public static int[] paginate(Sheet sheet, Double maxPageHeightInPoints) {
+		return paginate(sheet, maxPageHeightInPoints, null);
+	}
+
 	/**
-	 * Осуществление получения части листа, ограниченного заданными интервалом строк
-	 * 
-	 * @param workbook
-	 *            Книга к которой принадлежит лист
+	 * Разбиение листа на страницы по высоте: на листе расставляются разрывы страниц так,
+	 * чтобы высота каждой страницы (с учётом повторяющихся строк заголовка) не превышала заданную.
+	 * Разрыв страницы не ставится внутри объединённых ячеек, строка (группа объединённых строк),
+	 * не умещающаяся на странице, размещается на отдельной странице целиком.
+	 * Выполняется за один проход по строкам и объединённым ячейкам листа
+	 *
 	 * @param sheet
-	 *            Лист, из которого будет скопирована часть строк
-	 * @param firstRowIndex
-	 *            Индекс первой строки в диапазоне
-	 * @param lastRowIndex
-	 *            Индекс последней строки в диапазоне
+	 *            Лист, который нужно разбить на страницы
+	 * @param maxPageHeightInPoints
+	 *            Максимальная высота страницы, если передано null, то используется
+	 *            {@link #MAX_PAGE_HEIGHT_IN_POINTS}
+	 * @param options
+	 *            Параметры разбиения, если передано null, то используются
+	 *            {@link PaginationOptions#DEFAULT}
+	 * @return Индексы строк, после которых находятся разрывы страниц, по возрастанию
 	 */
-	private static Workbook extractRows(Workbook workbook,
-										Sheet sheet,
-										Integer firstRowIndex,
-										Integer lastRowIndex) {
-		Workbook targetWorkbook = new HSSFWorkbook();
-		collectStylesToSingle(workbook, targetWorkbook);
-		Sheet targetSheet = targetWorkbook.createSheet();
-		ColumnSizingData columnSizingData = new ColumnSizingData();
-		int firstRow = firstRowIndex == null ? 0 : firstRowIndex;
-		int lastRow = lastRowIndex == null ? 0 : sheet.getLastRowNum();
-		for (int rowIndex = firstRow; rowIndex <= lastRow; ++rowIndex) {
-			copyRow(workbook,
-					targetSheet,
-					targetWorkbook,
-					columnSizingData,
-					sheet,
-					sheet.getRow(rowIndex),
-					-firstRow,
-					0);
-		}
-		applyMergedRegions(	targetSheet,
-							shiftRegions(	filterRegions(	extractRegions(sheet),
-															firstRow,
-															lastRow,
-															null,
-															null),
-											-firstRow,
-											0));
-		return targetWorkbook;
+	public static int[] paginate(	Sheet sheet,
+									Double maxPageHeightInPoints,
+									PaginationOptions options) {
+		double maxHeight = Nvl.nvl(maxPageHeightInPoints, MAX_PAGE_HEIGHT_IN_POINTS);
+		PaginationOptions paginationOptions = Nvl.nvl(options, PaginationOptions.DEFAULT);
+		SheetGeometry geometry = SheetGeometry.of(sheet);
+		int rowCount = geometry.getRowCount();
+
+		// Разрыв после строки запрещён, если она не последняя строка объединённых ячеек
+		int[] coverage = new int[rowCount + 1];
+		for (int i = 0; i < sheet.getNumMergedRegions(); ++i) {
+			CellRangeAddress region = sheet.getMergedRegion(i);
+			int firstRow = Math.max(region.getFirstRow(), 0);
+			int lastRow = Math.min(region.getLastRow(), rowCount);
+			if (firstRow < lastRow) {
+				coverage[firstRow]++;
+				coverage[lastRow]--;
+			}
+		}
+		// allowedBreaks[i] - наибольший индекс строки не больше i, после которой разрешён разрыв
+		int[] allowedBreaks = new int[rowCount];
+		int depth = 0;
+		for (int i = 0; i < rowCount; ++i) {
+			depth += coverage[i];
+			allowedBreaks[i] = depth == 0 ? i : (i == 0 ? -1 : allowedBreaks[i - 1]);
+		}
+
+		int[] existingBreaks = getRowBreaks(sheet);
+		if (!paginationOptions.isKeepExistingBreaks()) {
+			for (int rowBreak : existingBreaks) {
+				sheet.removeRowBreak(rowBreak);
+			}
+			existingBreaks = new int[0];
+		}
+
+		int headerLastRow = -1;
+		double headerHeight = 0;
+		if (paginationOptions.getRepeatingRowsFirst() != null) {
+			int headerFirstRow = paginationOptions.getRepeatingRowsFirst();
+			headerLastRow =
+					Nvl.nvl(paginationOptions.getRepeatingRowsLast(), headerFirstRow);
+			sheet.setRepeatingRows(new CellRangeAddress(headerFirstRow, headerLastRow, -1, -1));
+			headerHeight = geometry.getHeightInPoints(headerFirstRow, headerLastRow);
+		}
+
+		List<Integer> result = new ArrayList<>();
+		int existingBreakIndex = 0;
+		int pageStart = 0;
+		while (pageStart < rowCount) {
+			double pageHeight = pageStart > headerLastRow ? maxHeight - headerHeight : maxHeight;
+			int breakRow = geometry.getLastFittingRow(pageStart, pageHeight);
+			if (breakRow < rowCount - 1) {
+				if (breakRow >= pageStart && allowedBreaks[breakRow] >= pageStart) {
+					breakRow = allowedBreaks[breakRow];
+				} else {
+					// Начало страницы не умещается целиком - страница продлевается до ближайшего
+					// разрешённого разрыва
+					breakRow = Math.max(breakRow, pageStart);
+					while (breakRow < rowCount - 1 && allowedBreaks[breakRow] != breakRow) {
+						breakRow++;
+					}
+				}
+			}
+			while (existingBreakIndex < existingBreaks.length
+					&& existingBreaks[existingBreakIndex] < pageStart) {
+				existingBreakIndex++;
+			}
+			if (existingBreakIndex < existingBreaks.length
+				&& existingBreaks[existingBreakIndex] <= breakRow) {
+				breakRow = existingBreaks[existingBreakIndex];
+			} else if (breakRow < rowCount - 1) {
+				sheet.setRowBreak(breakRow);
+			} else {
+				break;
+			}
+			result.add(breakRow);
+			pageStart = breakRow + 1;
+		}
+		return result.stream().mapToInt(Integer::intValue).toArray();
 	}
 
-	private static Workbook checkSplittedItem(Workbook workbook) {
-		if (workbook != null) {
+	/**
+	 * Индексы строк, после которых находятся разрывы страниц листа, по возрастанию.
+	 * Лист XLS хранит индексы строк разрывов в short и возвращает индексы больше 32767
+	 * отрицательными, поэтому они приводятся к беззнаковым
+	 */
+	static int[] getRowBreaks(Sheet sheet) {
+		int[] result = sheet.getRowBreaks();
+		if (sheet instanceof HSSFSheet) {
+			for (int i = 0; i < result.length; ++i) {
+				result[i] &= 0xFFFF;
+			}
+		}
+		Arrays.sort(result);
+		return result;
+	}
+
+	/** Страница листа: диапазон строк и объединённые ячейки страницы (в координатах страницы) */
+	private static class PageRange {
+		public Sheet sheet;
+		public int firstRow;
+		public int lastRow;
+		public List<CellRangeAddress> regions;
+	}
+
+	/**
+	 * Постраничное разбиение книги. Границы страниц, объединённые ячейки каждой страницы
+	 * и перенос стилей исходной книги определяются один раз для всей книги, после чего
+	 * при построении каждой страницы копируются только её строки
+	 */
+	private static class PageSplitter {
+		private final Workbook workbook;
+		/** Шрифты, добавляемые в новую книгу при переносе в неё стилей исходной книги */
+		private final List<FontFingerprint> fonts = new ArrayList<>();
+		/** Стили, добавляемые в новую книгу при переносе в неё стилей исходной книги */
+		private final List<StyleFingerprint> styles = new ArrayList<>();
+		/** Индексы шрифтов добавляемых стилей */
+		private final List<Short> styleFonts = new ArrayList<>();
+		/** Таблица соответствия стилей исходной книги стилям книги страницы */
+		private final short[] styleTable;
+		private final List<PageRange> pages = new ArrayList<>();
+
+		public PageSplitter(Workbook workbook) {
+			this.workbook = workbook;
+			// Перенос стилей в пустую книгу выполняется один раз, далее для каждой страницы
+			// воспроизводится та же последовательность создания шрифтов и стилей
+			StyleTableFingerprint styleTableFingerprint = StyleTableFingerprint.of(workbook);
+			Workbook prototype = new HSSFWorkbook();
+			StyleRegistry registry = StyleRegistry.of(prototype);
+			for (FontFingerprint font : styleTableFingerprint.getFonts()) {
+				int fontCount = prototype.getNumberOfFonts();
+				registry.getOrCreateFont(font);
+				if (prototype.getNumberOfFonts() > fontCount) {
+					fonts.add(font);
+				}
+			}
+			styleTable = new short[styleTableFingerprint.getStyles().size()];
+			for (int i = 0; i < styleTable.length; ++i) {
+				StyleFingerprint style = styleTableFingerprint.getStyles().get(i);
+				int fontCount = prototype.getNumberOfFonts();
+				int styleCount = prototype.getNumCellStyles();
+				CellStyle targetStyle = registry.getOrCreateStyle(style);
+				if (prototype.getNumberOfFonts() > fontCount) {
+					fonts.add(style.getFont());
+				}
+				if (prototype.getNumCellStyles() > styleCount) {
+					styles.add(style);
+					styleFonts.add(targetStyle.getFontIndex());
+				}
+				styleTable[i] = targetStyle.getIndex();
+			}
 			for (int i = 0; i < workbook.getNumberOfSheets(); ++i) {
-				for (Row row : workbook.getSheetAt(i)) {
-					for (Cell cell : row) {
-						if (cell != null) {
-							return workbook;
-						}
+				addPages(workbook.getSheetAt(i));
+			}
+		}
+
+		/** Определение страниц листа и распределение по ним объединённых ячеек за один проход */
+		private void addPages(Sheet sheet) {
+			int[] rowBreaks = getRowBreaks(sheet);
+			List<CellRangeAddress> regions = extractRegions(sheet);
+			regions.sort(Comparator.comparingInt(CellRangeAddress::getFirstRow));
+			int nextRegion = 0;
+			// Объединённые ячейки, начинающиеся не ниже текущей страницы и не закончившиеся выше неё
+			List<CellRangeAddress> activeRegions = new ArrayList<>();
+			int firstRow = 0;
+			for (int i = 0; i <= rowBreaks.length; ++i) {
+				int lastRow = i < rowBreaks.length ? rowBreaks[i] : sheet.getLastRowNum();
+				if (lastRow < firstRow) {
+					continue;
+				}
+				while (nextRegion < regions.size()
+						&& regions.get(nextRegion).getFirstRow() <= lastRow) {
+					activeRegions.add(regions.get(nextRegion++));
+				}
+				int pageFirstRow = firstRow;
+				activeRegions.removeIf(region -> region.getLastRow() < pageFirstRow);
+				if (hasCells(sheet, firstRow, lastRow)) {
+					PageRange page = new PageRange();
+					page.sheet = sheet;
+					page.firstRow = firstRow;
+					page.lastRow = lastRow;
+					page.regions =
+							shiftRegions(	filterRegions(activeRegions, firstRow, lastRow, null, null),
+											-firstRow,
+											0);
+					pages.add(page);
+				}
+				firstRow = lastRow + 1;
+			}
+		}
+
+		private static boolean hasCells(Sheet sheet, int firstRow, int lastRow) {
+			for (int rowIndex = firstRow; rowIndex <= lastRow; ++rowIndex) {
+				Row row = sheet.getRow(rowIndex);
+				if (row != null && row.getPhysicalNumberOfCells() > 0) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public List<PageRange> getPages() {
+			return pages;
+		}
+
+		/** Построение книги, содержащей страницу */
+		public Workbook extract(PageRange page) {
+			return build(snapshot(page));
+		}
+
+		/**
+		 * Снятие копии данных страницы, необходимых для построения её книги.
+		 * Обращается к исходной книге, поэтому должно выполняться в одном потоке
+		 */
+		public PageSnapshot snapshot(PageRange page) {
+			PageSnapshot result = new PageSnapshot();
+			result.regions = page.regions;
+			Set<Integer> columns = new HashSet<>();
+			for (int rowIndex = page.firstRow; rowIndex <= page.lastRow; ++rowIndex) {
+				Row row = page.sheet.getRow(rowIndex);
+				if (row == null) {
+					continue;
+				}
+				RowSnapshot rowSnapshot = new RowSnapshot();
+				rowSnapshot.rowIndex = rowIndex - page.firstRow;
+				rowSnapshot.heightInPoints = row.getHeightInPoints();
+				for (Cell cell : row) {
+					int columnIndex = cell.getColumnIndex();
+					if (columns.add(columnIndex)) {
+						result.columnWidths.add(new int[] { columnIndex,
+															page.sheet.getColumnWidth(columnIndex) });
 					}
+					CellSnapshot cellSnapshot = new CellSnapshot();
+					cellSnapshot.columnIndex = columnIndex;
+					cellSnapshot.comment = CommentSnapshot.of(cell.getCellComment());
+					cellSnapshot.style = styleTable[cell.getCellStyle().getIndex()];
+					cellSnapshot.value = CellValueSnapshot.of(cell);
+					rowSnapshot.cells.add(cellSnapshot);
+				}
+				result.rows.add(rowSnapshot);
+			}
+			return result;
+		}
 
+		/**
+		 * Построение книги страницы по копии её данных (аналогично {@link SSUtils#copyRow}).
+		 * К исходной книге не обращается и может выполняться параллельно для разных страниц
+		 */
+		public Workbook build(PageSnapshot page) {
+			Workbook targetWorkbook = new HSSFWorkbook();
+			for (FontFingerprint font : fonts) {
+				font.applyTo(targetWorkbook.createFont());
+			}
+			for (int i = 0; i < styles.size(); ++i) {
+				styles.get(i).applyTo(	targetWorkbook.createCellStyle(),
+										targetWorkbook.getFontAt(styleFonts.get(i)));
+			}
+			Sheet targetSheet = targetWorkbook.createSheet();
+			Drawing drawing = null;
+			Iterator<int[]> columnWidths = page.columnWidths.iterator();
+			Set<Integer> columns = new HashSet<>();
+			for (RowSnapshot row : page.rows) {
+				Row targetRow = targetSheet.createRow(row.rowIndex);
+				targetRow.setHeightInPoints(row.heightInPoints);
+				for (CellSnapshot cell : row.cells) {
+					if (columns.add(cell.columnIndex)) {
+						int[] columnWidth = columnWidths.next();
+						targetSheet.setColumnWidth(columnWidth[0], columnWidth[1]);
+					}
+					Cell targetCell = targetRow.createCell(cell.columnIndex);
+					if (cell.comment != null) {
+						if (drawing == null) {
+							drawing = targetSheet.createDrawingPatriarch();
+						}
+						cell.comment.applyTo(targetWorkbook, drawing, targetCell);
+					}
+					targetCell.setCellStyle(targetWorkbook.getCellStyleAt(cell.style));
+					cell.value.applyTo(targetCell);
 				}
 			}
+			applyMergedRegions(targetSheet, page.regions);
+			return targetWorkbook;
 		}
-		return null;
 	}
 
-	/** Осуществление постраничного разбиения книги на набор отдельных книг */
+	/** Копия данных ячейки, переносимых на страницу */
+	private static class CellSnapshot {
+		public int columnIndex;
+		public CommentSnapshot comment;
+		/** Индекс стиля в книге страницы */
+		public short style;
+		public CellValueSnapshot value;
+	}
+
+	/**
+	 * Копия значения ячейки, используемая при копировании ячеек ({@link SSUtils#copyCell})
+	 * и при построении страниц. Текст копируется без форматирования, так как шрифты
+	 * форматирования принадлежат исходной книге, для формул копируется вычисленное значение,
+	 * так как ссылки формулы после копирования указывают на другие ячейки
+	 */
+	private static class CellValueSnapshot {
+		public int type;
+		public boolean booleanValue;
+		public double numericValue;
+		public String stringValue;
+		public byte errorValue;
+
+		public static CellValueSnapshot of(Cell cell) {
+			CellValueSnapshot result = new CellValueSnapshot();
+			result.type = cell.getCellType();
+			if (result.type == Cell.CELL_TYPE_FORMULA) {
+				result.type = cell.getCachedFormulaResultType();
+			}
+			switch (result.type) {
+			case Cell.CELL_TYPE_BOOLEAN:
+				result.booleanValue = cell.getBooleanCellValue();
+				break;
+			case Cell.CELL_TYPE_NUMERIC:
+				result.numericValue = cell.getNumericCellValue();
+				break;
+			case Cell.CELL_TYPE_STRING:
+				result.stringValue = cell.getStringCellValue();
+				break;
+			case Cell.CELL_TYPE_ERROR:
+				result.errorValue = cell.getErrorCellValue();
+				break;
+			}
+			return result;
+		}
+
+		public void applyTo(Cell targetCell) {
+			targetCell.setCellType(type);
+			switch (type) {
+			case Cell.CELL_TYPE_BOOLEAN:
+				targetCell.setCellValue(booleanValue);
+				break;
+			case Cell.CELL_TYPE_NUMERIC:
+				targetCell.setCellValue(numericValue);
+				break;
+			case Cell.CELL_TYPE_STRING:
+				setCellValue(	targetCell,
+								createRichTextString(	targetCell.getSheet().getWorkbook(),
+														stringValue));
+				break;
+			case Cell.CELL_TYPE_ERROR:
+				targetCell.setCellErrorValue(errorValue);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Копия данных примечания ячейки. Исходное примечание принадлежит листу исходной книги,
+	 * поэтому на странице создаётся новое примечание (аналогично {@link SSUtils#copyComment})
+	 */
+	private static class CommentSnapshot {
+		public String text;
+		public String author;
+		public boolean visible;
+		/** Размер примечания в строках */
+		public int rows = 3;
+		/** Размер примечания в столбцах */
+		public int columns = 2;
+
+		/** Копия данных примечания, null - если примечание отсутствует */
+		public static CommentSnapshot of(Comment comment) {
+			if (comment == null) {
+				return null;
+			}
+			CommentSnapshot result = new CommentSnapshot();
+			if (comment.getString() != null) {
+				result.text = comment.getString().getString();
+			}
+			result.author = comment.getAuthor();
+			result.visible = comment.isVisible();
+			ClientAnchor anchor = comment.getClientAnchor();
+			if (anchor != null
+				&& anchor.getRow2() > anchor.getRow1()
+				&& anchor.getCol2() > anchor.getCol1()) {
+				result.rows = anchor.getRow2() - anchor.getRow1();
+				result.columns = anchor.getCol2() - anchor.getCol1();
+			}
+			return result;
+		}
+
+		/** Создание примечания ячейки книги страницы */
+		public void applyTo(Workbook targetWorkbook, Drawing drawing, Cell targetCell) {
+			CreationHelper creationHelper = targetWorkbook.getCreationHelper();
+			ClientAnchor anchor = creationHelper.createClientAnchor();
+			anchor.setRow1(targetCell.getRowIndex());
+			anchor.setRow2(targetCell.getRowIndex() + rows);
+			anchor.setCol1(targetCell.getColumnIndex() + 1);
+			anchor.setCol2(targetCell.getColumnIndex() + 1 + columns);
+			Comment targetComment = drawing.createCellComment(anchor);
+			if (text != null) {
+				targetComment.setString(creationHelper.createRichTextString(text));
+			}
+			targetComment.setAuthor(author);
+			targetComment.setVisible(visible);
+			targetComment.setRow(targetCell.getRowIndex());
+			targetComment.setColumn(targetCell.getColumnIndex());
+			targetCell.setCellComment(targetComment);
+		}
+	}
+
+	/** Копия данных строки, переносимых на страницу */
+	private static class RowSnapshot {
+		/** Индекс строки на странице */
+		public int rowIndex;
+		public float heightInPoints;
+		public List<CellSnapshot> cells = new ArrayList<>();
+	}
+
+	/** Копия данных страницы, не зависящая от исходной книги */
+	private static class PageSnapshot {
+		public List<RowSnapshot> rows = new ArrayList<>();
+		/** Ширины столбцов страницы (индекс, ширина) в порядке их появления */
+		public List<int[]> columnWidths = new ArrayList<>();
+		public List<CellRangeAddress> regions;
+	}
+
+	/**
+	 * Осуществление постраничного разбиения книги на набор отдельных книг.
+	 * Страницы, не содержащие ячеек, пропускаются
+	 */
 	public static List<Workbook> splitByPages(Workbook workbook) {
-		List<Workbook> result = new ArrayList<>();
-		for (int i = 0; i < workbook.getNumberOfSheets(); ++i) {
-			Sheet sheet = workbook.getSheetAt(i);
-			int currentRowIndex = 0;
-			for (int breakRowIndex : sheet.getRowBreaks()) {
-				result.add(checkSplittedItem(extractRows(	workbook,
-															sheet,
-															currentRowIndex,
-															breakRowIndex)));
-				currentRowIndex = breakRowIndex + 1;
+		return streamByPages(workbook).collect(toList());
+	}
+
+	/**
+	 * Постраничное разбиение книги с построением книги очередной страницы только при её запросе,
+	 * что позволяет не хранить в памяти книги всех страниц одновременно.
+	 * Страницы, не содержащие ячеек, пропускаются
+	 */
+	public static Stream<Workbook> streamByPages(Workbook workbook) {
+		PageSplitter splitter = new PageSplitter(workbook);
+		return splitter.getPages().stream().map(splitter::extract);
+	}
+
+	/** Постраничное разбиение книги (см. {@link #streamByPages(Workbook)}) */
+	public static Iterator<Workbook> iterateByPages(Workbook workbook) {
+		return streamByPages(workbook).iterator();
+	}
+
+	/**
+	 * Постраничное разбиение книги с передачей содержимого книги каждой страницы получателю.
+	 * Книга страницы строится и сохраняется только при переходе к ней, поэтому в памяти
+	 * одновременно находится не более одной страницы
+	 *
+	 * @param workbook
+	 *            Книга, которую нужно разбить на страницы
+	 * @param pageConsumer
+	 *            Получатель содержимого книг страниц (в порядке следования страниц)
+	 * @return Количество страниц
+	 */
+	public static int splitByPages(Workbook workbook, Consumer<byte[]> pageConsumer)
+			throws IOException {
+		int pageNumber = 0;
+		for (Iterator<Workbook> pages = iterateByPages(workbook); pages.hasNext();) {
+			pageConsumer.accept(flushWorkBook(pages.next()));
+			pageNumber++;
+		}
+		return pageNumber;
+	}
+
+	/**
+	 * Постраничное разбиение книги с записью книги каждой страницы в отдельный поток.
+	 * Книга страницы строится и записывается только при переходе к ней, поэтому в памяти
+	 * одновременно находится не более одной страницы
+	 *
+	 * @param workbook
+	 *            Книга, которую нужно разбить на страницы
+	 * @param outputStreams
+	 *            Фабрика потоков для записи книг страниц по номеру страницы (начиная с 0),
+	 *            поток закрывается после записи страницы
+	 * @return Количество страниц
+	 */
+	public static int writeByPages(Workbook workbook, IntFunction<OutputStream> outputStreams)
+			throws IOException {
+		int pageNumber = 0;
+		for (Iterator<Workbook> pages = iterateByPages(workbook); pages.hasNext();) {
+			Workbook page = pages.next();
+			try (OutputStream outputStream = outputStreams.apply(pageNumber)) {
+				page.write(outputStream);
 			}
-			result.add(checkSplittedItem(extractRows(workbook, sheet, currentRowIndex, null)));
+			pageNumber++;
 		}
-		return result.stream().filter(Objects::nonNull).collect(toList());
+		return pageNumber;
+	}
+
+	/**
+	 * Параллельное постраничное разбиение книги на набор отдельных книг.
+	 * Данные страниц предварительно копируются из исходной книги в одном потоке, после чего
+	 * книги страниц строятся параллельно в заданном пуле потоков. Порядок страниц
+	 * соответствует {@link #splitByPages(Workbook)}
+	 */
+	public static List<Workbook> splitByPagesParallel(Workbook workbook, ForkJoinPool pool) {
+		PageSplitter splitter = new PageSplitter(workbook);
+		List<PageSnapshot> snapshots =
+				splitter.getPages().stream().map(splitter::snapshot).collect(toList());
+		return pool.submit(() -> snapshots.parallelStream().map(splitter::build).collect(toList()))
+				.join();
+	}
+
+	/**
+	 * Параллельное постраничное разбиение книги в общем пуле потоков
+	 * {@link ForkJoinPool#commonPool()} (см. {@link #splitByPagesParallel(Workbook, ForkJoinPool)})
+	 */
+	public static List<Workbook> splitByPagesParallel(Workbook workbook) {
+		return splitByPagesParallel(workbook, ForkJoinPool.commonPool());
 	}
 
 	/** Получение высоты строки, в которой находится ячейка, если она существует, иначе null */
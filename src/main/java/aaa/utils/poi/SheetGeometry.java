@@ -0,0 +1,204 @@
+package aaa.utils.poi;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+
+import java.util.Arrays;
+
+/**
+ * Индекс размеров листа: накопленные суммы высот строк и ширин столбцов.
+ * Строится один раз за проход по строкам листа и отвечает на запросы высоты (ширины) диапазона
+ * строк (столбцов) за O(1), а на запрос "последняя строка, умещающаяся в заданную высоту" -
+ * двоичным поиском. Результаты соответствуют функциям {@link SSUtils#getSheetHeightInPoints},
+ * {@link SSUtils#getSheetWidthInPoints}, {@link SSUtils#getSheetHeight},
+ * {@link SSUtils#getMaxColumnNumber} и {@link SSUtils#getLastColumnNum}.
+ * <p>
+ * Строки, добавленные на лист после последнего пересчёта, учитываются автоматически.
+ * Об изменении высоты (состава ячеек) существующих строк или ширины столбцов индекс необходимо
+ * уведомить через {@link #invalidateRow(int)}, {@link #invalidateColumn(int)} или
+ * {@link #invalidate()}, пересчёт выполняется при следующем запросе начиная с изменённого индекса
+ */
+public class SheetGeometry {
+
+	private final Sheet sheet;
+
+	/** Количество учтённых строк (индекс последней строки листа + 1) */
+	private int rowCount = 0;
+	/** heightPrefix[i] - сумма высот строк с индексами меньше i, в точках */
+	private double[] heightPrefix = new double[1];
+	/** twipsPrefix[i] - сумма высот строк с индексами меньше i, в 1/20 точки */
+	private int[] twipsPrefix = new int[1];
+	/** lastCellPrefix[i] - максимальный {@link Row#getLastCellNum()} строк с индексами меньше i */
+	private int[] lastCellPrefix = new int[] { -1 };
+	/** Индекс первой строки, требующей пересчёта */
+	private int dirtyRow = 0;
+
+	/** Количество учтённых столбцов */
+	private int columnCount = 0;
+	/** widthPrefix[i] - сумма ширин столбцов с индексами меньше i */
+	private double[] widthPrefix = new double[1];
+
+	private SheetGeometry(Sheet sheet) {
+		this.sheet = sheet;
+	}
+
+	public static SheetGeometry of(Sheet sheet) {
+		return new SheetGeometry(sheet);
+	}
+
+	public Sheet getSheet() {
+		return sheet;
+	}
+
+	/** Уведомление об изменении строки с заданным индексом */
+	public void invalidateRow(int rowIndex) {
+		dirtyRow = Math.min(dirtyRow, Math.max(rowIndex, 0));
+	}
+
+	/** Уведомление об изменении ширины столбца с заданным индексом */
+	public void invalidateColumn(int columnIndex) {
+		columnCount = Math.min(columnCount, Math.max(columnIndex, 0));
+	}
+
+	/** Уведомление о произвольных изменениях листа */
+	public void invalidate() {
+		dirtyRow = 0;
+		columnCount = 0;
+	}
+
+	private void updateRows() {
+		int newRowCount = sheet.getPhysicalNumberOfRows() == 0 ? 0 : sheet.getLastRowNum() + 1;
+		if (newRowCount != rowCount) {
+			dirtyRow = Math.min(dirtyRow, Math.min(rowCount, newRowCount));
+			rowCount = newRowCount;
+		}
+		if (dirtyRow >= rowCount) {
+			return;
+		}
+		if (heightPrefix.length < rowCount + 1) {
+			int length = Math.max(heightPrefix.length * 2, rowCount + 1);
+			heightPrefix = Arrays.copyOf(heightPrefix, length);
+			twipsPrefix = Arrays.copyOf(twipsPrefix, length);
+			lastCellPrefix = Arrays.copyOf(lastCellPrefix, length);
+		}
+		for (int i = dirtyRow; i < rowCount; ++i) {
+			Row row = sheet.getRow(i);
+			heightPrefix[i + 1] = heightPrefix[i] + (row == null ? 0 : row.getHeightInPoints());
+			twipsPrefix[i + 1] = twipsPrefix[i] + (row == null ? 0 : row.getHeight());
+			lastCellPrefix[i + 1] =
+					row == null ? lastCellPrefix[i] : Math.max(lastCellPrefix[i], row.getLastCellNum());
+		}
+		dirtyRow = rowCount;
+	}
+
+	private void updateColumns(int requiredColumnCount) {
+		if (requiredColumnCount <= columnCount) {
+			return;
+		}
+		if (widthPrefix.length < requiredColumnCount + 1) {
+			widthPrefix =
+					Arrays.copyOf(widthPrefix, Math.max(widthPrefix.length * 2, requiredColumnCount + 1));
+		}
+		for (int i = columnCount; i < requiredColumnCount; ++i) {
+			widthPrefix[i + 1] = widthPrefix[i] + sheet.getColumnWidth(i);
+		}
+		columnCount = requiredColumnCount;
+	}
+
+	private int clampRow(int rowIndex) {
+		return Math.max(0, Math.min(rowIndex, rowCount));
+	}
+
+	/** Количество строк листа (индекс последней строки + 1, либо 0 для пустого листа) */
+	public int getRowCount() {
+		updateRows();
+		return rowCount;
+	}
+
+	/** Высота листа в точках (см. {@link SSUtils#getSheetHeightInPoints(Sheet)}) */
+	public double getHeightInPoints() {
+		return getHeightInPoints(null, null);
+	}
+
+	/**
+	 * Высота диапазона строк в точках (см.
+	 * {@link SSUtils#getSheetHeightInPoints(Sheet, Integer, Integer)})
+	 *
+	 * @param firstRowIndex
+	 *            Индекс первой строки диапазона, если передано null, то с начала листа
+	 * @param lastRowIndex
+	 *            Индекс последней строки диапазона (включительно), если передано null,
+	 *            то до конца листа
+	 */
+	public double getHeightInPoints(Integer firstRowIndex, Integer lastRowIndex) {
+		updateRows();
+		int from = clampRow(firstRowIndex == null ? 0 : firstRowIndex);
+		int to = clampRow(lastRowIndex == null ? rowCount : lastRowIndex + 1);
+		return to > from ? heightPrefix[to] - heightPrefix[from] : 0;
+	}
+
+	/** Высота листа в 1/20 точки (см. {@link SSUtils#getSheetHeight(Sheet)}) */
+	public int getHeight() {
+		updateRows();
+		return twipsPrefix[rowCount];
+	}
+
+	/**
+	 * Индекс последней строки, при которой строки с firstRowIndex по неё включительно
+	 * умещаются в заданную высоту. Если не умещается даже первая строка, то возвращается
+	 * firstRowIndex - 1
+	 */
+	public int getLastFittingRow(int firstRowIndex, double maxHeightInPoints) {
+		updateRows();
+		int from = clampRow(firstRowIndex);
+		double limit = heightPrefix[from] + maxHeightInPoints;
+		// Поиск наибольшего to, для которого heightPrefix[to] <= limit
+		int low = from;
+		int high = rowCount;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (heightPrefix[middle] <= limit) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return Math.max(low - 1, firstRowIndex - 1);
+	}
+
+	/** Крайний (максимальный) номер столбца листа (см. {@link SSUtils#getMaxColumnNumber(Sheet)}) */
+	public int getMaxColumnNumber() {
+		return Math.max(getLastColumnNum(), 0);
+	}
+
+	/** Самый большой индекс столбца листа (см. {@link SSUtils#getLastColumnNum(Sheet)}) */
+	public int getLastColumnNum() {
+		updateRows();
+		return lastCellPrefix[rowCount];
+	}
+
+	/** Ширина листа (см. {@link SSUtils#getSheetWidthInPoints(Sheet)}) */
+	public double getWidthInPoints() {
+		return getWidthInPoints(null, null);
+	}
+
+	/**
+	 * Ширина диапазона столбцов (см. {@link SSUtils#getSheetWidthInPoints(Sheet, Integer, Integer)})
+	 *
+	 * @param firstColumnIndex
+	 *            Индекс первого столбца диапазона, если передано null, то с начала листа
+	 * @param lastColumnIndex
+	 *            Индекс столбца, которым заканчивается диапазон (не включая), если передано
+	 *            null, то до крайнего столбца листа
+	 */
+	public double getWidthInPoints(Integer firstColumnIndex, Integer lastColumnIndex) {
+		int from = Math.max(firstColumnIndex == null ? 0 : firstColumnIndex, 0);
+		int to = lastColumnIndex == null ? getMaxColumnNumber() : lastColumnIndex;
+		if (to <= from) {
+			return 0;
+		}
+		updateColumns(to);
+		return widthPrefix[to] - widthPrefix[from];
+	}
+
+}
@@ -0,0 +1,73 @@
+package aaa.utils.poi;
+
+import lombok.Value;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * Слепок стиля оформления: набор атрибутов, по которым
+ * {@link SSUtils#styleEquals(Workbook, CellStyle, Workbook, CellStyle)} сравнивает стили.
+ * Может использоваться как ключ хеш-таблиц
+ */
+@Value
+public class StyleFingerprint {
+
+	short alignment;
+	short borderBottom;
+	short borderTop;
+	short borderLeft;
+	short borderRight;
+	FontFingerprint font;
+	short fillBackgroundColor;
+	short fillForegroundColor;
+	short indention;
+	short rotation;
+	short verticalAlignment;
+	boolean wrapText;
+
+	public static StyleFingerprint of(Workbook workbook, CellStyle style) {
+		return style == null ? null : of(style, SSUtils.getFont(workbook, style));
+	}
+
+	/** Получение слепка стиля по стилю и его шрифту */
+	public static StyleFingerprint of(CellStyle style, Font font) {
+		return style == null ? null : new StyleFingerprint(	style.getAlignment(),
+															style.getBorderBottom(),
+															style.getBorderTop(),
+															style.getBorderLeft(),
+															style.getBorderRight(),
+															FontFingerprint.of(font),
+															style.getFillBackgroundColor(),
+															style.getFillForegroundColor(),
+															style.getIndention(),
+															style.getRotation(),
+															style.getVerticalAlignment(),
+															style.getWrapText());
+	}
+
+	/**
+	 * Применение атрибутов слепка к стилю
+	 * 
+	 * @param font
+	 *            Шрифт книги стиля, соответствующий слепку шрифта, если передано null, то шрифт
+	 *            стиля не изменяется
+	 */
+	public void applyTo(CellStyle style, Font font) {
+		style.setAlignment(alignment);
+		style.setBorderBottom(borderBottom);
+		style.setBorderTop(borderTop);
+		style.setBorderLeft(borderLeft);
+		style.setBorderRight(borderRight);
+		if (font != null) {
+			style.setFont(font);
+		}
+		style.setFillBackgroundColor(fillBackgroundColor);
+		style.setFillForegroundColor(fillForegroundColor);
+		style.setIndention(indention);
+		style.setRotation(rotation);
+		style.setVerticalAlignment(verticalAlignment);
+		style.setWrapText(wrapText);
+	}
+
+}
@@ -0,0 +1,212 @@
+package aaa.utils.poi;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Индекс стилей оформления и шрифтов рабочей книги по их слепкам ({@link StyleFingerprint},
+ * {@link FontFingerprint}). Позволяет найти в книге стиль или шрифт, равный заданному, за O(1)
+ * вместо перебора всех стилей (шрифтов) книги.
+ * <p>
+ * Индекс создаётся один раз на книгу ({@link #of(Workbook)}) и дополняется по мере
+ * появления в книге новых стилей и шрифтов (в том числе созданных в обход индекса).
+ * Найденный элемент всегда перепроверяется, и если он был изменён после индексации,
+ * индекс перестраивается. Созданные индексом элементы находятся и по исходному слепку,
+ * так как книги XLSX читают некоторые атрибуты иначе, чем они были заданы (например,
+ * цвет шрифта {@link Font#COLOR_NORMAL} читается как чёрный), и слепок созданного
+ * элемента может не совпасть с исходным.
+ * <p>
+ * Кроме того, индекс хранит построенные таблицы соответствия стилей по слепкам таблиц
+ * стилей исходных книг ({@link StyleTableFingerprint}), что позволяет не собирать повторно стили
+ * книг, созданных по одному шаблону. Таблицы соответствия не перепроверяются, поэтому
+ * не следует изменять уже использованные в них стили книги.
+ * <p>
+ * Как и сама книга, индекс не является потокобезопасным
+ */
+public class StyleRegistry {
+
+	private static final Map<Workbook, StyleRegistry> REGISTRIES =
+			Collections.synchronizedMap(new WeakHashMap<>());
+
+	/** Ссылка на книгу слабая, т.к. индекс хранится в качестве значения в {@link WeakHashMap} */
+	private final Reference<Workbook> workbook;
+	/** Индексы стилей по их слепкам; при совпадении слепков хранится наименьший индекс */
+	private final Map<StyleFingerprint, Short> styles = new HashMap<>();
+	/** Количество стилей книги, уже внесённых в индекс */
+	private int indexedStyles = 0;
+	/** Слепки стилей книги на момент индексации по индексам стилей */
+	private final Map<Short, StyleFingerprint> indexedStyleFingerprints = new HashMap<>();
+	/** Индексы шрифтов по их слепкам; при совпадении слепков хранится наименьший индекс */
+	private final Map<FontFingerprint, Short> fonts = new HashMap<>();
+	/** Количество шрифтов книги, уже внесённых в индекс */
+	private int indexedFonts = 0;
+	/** Слепки шрифтов книги на момент индексации по индексам шрифтов */
+	private final Map<Short, FontFingerprint> indexedFontFingerprints = new HashMap<>();
+	/** Построенные таблицы соответствия стилей по слепкам таблиц стилей исходных книг */
+	private final Map<StyleTableFingerprint, short[]> styleTables = new HashMap<>();
+
+	private StyleRegistry(Workbook workbook) {
+		this.workbook = new WeakReference<>(workbook);
+	}
+
+	/** Получение индекса стилей книги, при первом обращении индекс создаётся */
+	public static StyleRegistry of(Workbook workbook) {
+		return REGISTRIES.computeIfAbsent(workbook, StyleRegistry::new);
+	}
+
+	private Workbook getWorkbook() {
+		Workbook result = workbook.get();
+		if (result == null) {
+			throw new IllegalStateException("Workbook has been garbage collected"); //$NON-NLS-1$
+		}
+		return result;
+	}
+
+	/** Внесение в индекс стилей, появившихся в книге после предыдущей индексации */
+	private void syncStyles(Workbook target) {
+		for (int i = indexedStyles; i < target.getNumCellStyles(); ++i) {
+			indexStyle(target, target.getCellStyleAt((short) i));
+		}
+		indexedStyles = target.getNumCellStyles();
+	}
+
+	private StyleFingerprint indexStyle(Workbook target, CellStyle style) {
+		StyleFingerprint result = StyleFingerprint.of(target, style);
+		indexedStyleFingerprints.put(style.getIndex(), result);
+		styles.putIfAbsent(result, style.getIndex());
+		return result;
+	}
+
+	/** Поиск в книге стиля, соответствующего слепку, если такого стиля нет, то возвращается null */
+	public CellStyle findStyle(StyleFingerprint fingerprint) {
+		if (fingerprint == null) {
+			return null;
+		}
+		Workbook target = getWorkbook();
+		syncStyles(target);
+		Short index = styles.get(fingerprint);
+		if (index == null) {
+			return null;
+		}
+		CellStyle style = target.getCellStyleAt(index);
+		if (!indexedStyleFingerprints.get(index).equals(StyleFingerprint.of(target, style))) {
+			// Стиль был изменён после индексации
+			styles.clear();
+			indexedStyles = 0;
+			indexedStyleFingerprints.clear();
+			return findStyle(fingerprint);
+		}
+		return style;
+	}
+
+	/** Получение стиля книги, соответствующего слепку, при отсутствии такого стиля он создаётся */
+	public CellStyle getOrCreateStyle(StyleFingerprint fingerprint) {
+		if (fingerprint == null) {
+			return null;
+		}
+		CellStyle style = findStyle(fingerprint);
+		if (style != null) {
+			return style;
+		}
+		Workbook target = getWorkbook();
+		style = target.createCellStyle();
+		fingerprint.applyTo(style, getOrCreateFont(fingerprint.getFont()));
+		syncStyles(target);
+		// Созданный стиль должен находиться и по исходному слепку
+		styles.putIfAbsent(fingerprint, style.getIndex());
+		return style;
+	}
+
+	/** Внесение в индекс шрифтов, появившихся в книге после предыдущей индексации */
+	private void syncFonts(Workbook target) {
+		for (short i = (short) indexedFonts; i < target.getNumberOfFonts(); ++i) {
+			indexFont(target.getFontAt(i));
+		}
+		indexedFonts = target.getNumberOfFonts();
+	}
+
+	private FontFingerprint indexFont(Font font) {
+		FontFingerprint result = FontFingerprint.of(font);
+		indexedFontFingerprints.put(font.getIndex(), result);
+		fonts.putIfAbsent(result, font.getIndex());
+		return result;
+	}
+
+	/** Поиск в книге шрифта, соответствующего слепку, если такого шрифта нет, то возвращается null */
+	public Font findFont(FontFingerprint fingerprint) {
+		if (fingerprint == null) {
+			return null;
+		}
+		Workbook target = getWorkbook();
+		syncFonts(target);
+		Short index = fonts.get(fingerprint);
+		if (index == null) {
+			return null;
+		}
+		Font font = target.getFontAt(index);
+		if (!indexedFontFingerprints.get(index).equals(FontFingerprint.of(font))) {
+			// Шрифт был изменён после индексации
+			fonts.clear();
+			indexedFonts = 0;
+			indexedFontFingerprints.clear();
+			return findFont(fingerprint);
+		}
+		return font;
+	}
+
+	/** Получение шрифта книги, соответствующего слепку, при отсутствии такого шрифта он создаётся */
+	public Font getOrCreateFont(FontFingerprint fingerprint) {
+		if (fingerprint == null) {
+			return null;
+		}
+		Font font = findFont(fingerprint);
+		if (font == null) {
+			Workbook target = getWorkbook();
+			font = target.createFont();
+			fingerprint.applyTo(font);
+			syncFonts(target);
+			// Индекс шрифта книги XLS может не входить в диапазон, обходимый syncFonts
+			indexFont(font);
+			// Созданный шрифт должен находиться и по исходному слепку
+			fonts.putIfAbsent(fingerprint, font.getIndex());
+		}
+		return font;
+	}
+
+	/**
+	 * Поиск ранее построенной таблицы соответствия стилей для исходной книги с заданным
+	 * слепком таблиц стилей, если такой таблицы нет, то возвращается null
+	 */
+	public short[] findStyleTable(StyleTableFingerprint fingerprint) {
+		short[] styleTable = styleTables.get(fingerprint);
+		return styleTable == null ? null : styleTable.clone();
+	}
+
+	/**
+	 * Добавление в книгу шрифтов и стилей исходной книги с заданным слепком таблиц стилей
+	 * (отсутствующих в книге) и построение таблицы соответствия стилей
+	 * 
+	 * @return Таблица соответствия стилей: по индексу стиля исходной книги содержит
+	 *         индекс соответствующего стиля книги
+	 */
+	public short[] createStyleTable(StyleTableFingerprint fingerprint) {
+		for (FontFingerprint font : fingerprint.getFonts()) {
+			getOrCreateFont(font);
+		}
+		short[] styleTable = new short[fingerprint.getStyles().size()];
+		for (int i = 0; i < styleTable.length; ++i) {
+			styleTable[i] = getOrCreateStyle(fingerprint.getStyles().get(i)).getIndex();
+		}
+		styleTables.put(fingerprint, styleTable);
+		return styleTable.clone();
+	}
+
+}
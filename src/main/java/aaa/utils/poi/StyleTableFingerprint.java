@@ -0,0 +1,35 @@
+package aaa.utils.poi;
+
+import lombok.Value;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Слепок таблиц шрифтов и стилей рабочей книги целиком (в порядке их индексов).
+ * Книги, созданные по одному шаблону, как правило имеют равные слепки, что позволяет
+ * переиспользовать для них одну таблицу соответствия стилей
+ * (см. {@link SSUtils#collectStylesToSingle(Workbook, Workbook)})
+ */
+@Value
+public class StyleTableFingerprint {
+
+	List<FontFingerprint> fonts;
+	List<StyleFingerprint> styles;
+
+	public static StyleTableFingerprint of(Workbook workbook) {
+		List<FontFingerprint> fonts = new ArrayList<>(workbook.getNumberOfFonts());
+		for (short i = 0; i < workbook.getNumberOfFonts(); ++i) {
+			fonts.add(FontFingerprint.of(workbook.getFontAt(i)));
+		}
+		List<StyleFingerprint> styles = new ArrayList<>(workbook.getNumCellStyles());
+		for (short i = 0; i < workbook.getNumCellStyles(); ++i) {
+			styles.add(StyleFingerprint.of(workbook, workbook.getCellStyleAt(i)));
+		}
+		return new StyleTableFingerprint(	Collections.unmodifiableList(fonts),
+											Collections.unmodifiableList(styles));
+	}
+
+}
@@ -0,0 +1,196 @@
+package aaa.utils.poi;
+
+import org.apache.poi.hssf.usermodel.HSSFStyleTableReader;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ограниченный по размеру кэш слепков таблиц шрифтов и стилей исходных книг
+ * ({@link StyleTableFingerprint}), ключом которого является содержимое книги.
+ * Позволяет при повторных соединениях книг одних и тех же шаблонов не разбирать их таблицы
+ * стилей заново: сбор стилей ({@link SSUtils#collectStylesOnly(Iterable)}) для книг из кэша
+ * не требует чтения книг вовсе, а одинаковые слепки находят готовые таблицы соответствия
+ * стилей целевой книги (см. {@link StyleRegistry}).
+ * <p>
+ * Разобранные книги в кэше не хранятся: они изменяемы (при соединении в книгу XLS примечания
+ * исходных ячеек переносятся в целевую книгу), поэтому каждое соединение разбирает их заново.
+ * При переполнении вытесняются книги, к которым дольше всего не было обращений, кроме того
+ * слепки хранятся по мягким ссылкам и освобождаются при нехватке памяти.
+ * <p>
+ * Поиск книги требует одного прохода по её содержимому для вычисления хэша
+ * ({@link Arrays#hashCode(byte[])}) и, при совпадении хэша, сравнения с содержимым книги
+ * в кэше, что в несколько раз быстрее чтения таблиц стилей, поэтому кэш ускоряет и
+ * соединения книг, содержимое которых каждый раз передаётся в новых массивах.
+ * Кэш хранит содержимое (первый переданный массив) каждой своей книги, поэтому содержимое
+ * массивов, переданных в кэш, не должно изменяться. Кэш потокобезопасен
+ */
+public class TemplateCache {
+
+	/** Максимальное количество книг в кэше по-умолчанию */
+	public static final int DEFAULT_MAX_SIZE = 100;
+
+	/** Ключ книги - её содержимое, хэш которого вычисляется при создании ключа */
+	private static final class Key {
+		private final byte[] workbookData;
+		private final int hash;
+
+		public Key(byte[] workbookData) {
+			this.workbookData = workbookData;
+			this.hash = Arrays.hashCode(workbookData);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return hash == other.hash && Arrays.equals(workbookData, other.workbookData);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	private final Map<Key, SoftReference<StyleTableFingerprint>> entries;
+	private long hits = 0;
+	private long misses = 0;
+
+	public TemplateCache() {
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	public TemplateCache(int maxSize) {
+		entries = new LinkedHashMap<Key, SoftReference<StyleTableFingerprint>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<Key, SoftReference<StyleTableFingerprint>> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	private synchronized StyleTableFingerprint find(Key key) {
+		SoftReference<StyleTableFingerprint> reference = entries.get(key);
+		StyleTableFingerprint result = reference != null ? reference.get() : null;
+		if (result != null) {
+			hits++;
+		} else {
+			misses++;
+		}
+		return result;
+	}
+
+	private synchronized void put(Key key, StyleTableFingerprint styles) {
+		entries.put(key, new SoftReference<>(styles));
+	}
+
+	/**
+	 * Получение слепка таблиц стилей книги из кэша, при отсутствии в кэше таблицы стилей
+	 * читаются из книги ({@link HSSFStyleTableReader}) и сохраняются
+	 */
+	public StyleTableFingerprint getStyleTable(byte[] workbookData) throws IOException {
+		Key key = new Key(workbookData);
+		StyleTableFingerprint result = find(key);
+		if (result == null) {
+			result = HSSFStyleTableReader.read(workbookData);
+			put(key, result);
+		}
+		return result;
+	}
+
+	/** Источник книги, слепок таблиц стилей которого берётся из кэша */
+	public WorkbookSource source(byte[] workbookData) {
+		return new CachedSource(workbookData);
+	}
+
+	/** Источники книг, слепки таблиц стилей которых берутся из кэша (см. {@link #source}) */
+	public List<WorkbookSource> sources(Iterable<byte[]> workbooksData) {
+		List<WorkbookSource> result = new ArrayList<>();
+		for (byte[] workbookData : workbooksData) {
+			result.add(source(workbookData));
+		}
+		return result;
+	}
+
+	private class CachedSource extends WorkbookSource {
+		private final WorkbookSource data;
+		private final Key key;
+
+		public CachedSource(byte[] workbookData) {
+			this.data = WorkbookSource.of(workbookData);
+			this.key = new Key(workbookData);
+		}
+
+		@Override
+		public Workbook readWorkbook() throws IOException {
+			return data.readWorkbook();
+		}
+
+		@Override
+		public StyleTableFingerprint readStyleTable() throws IOException {
+			StyleTableFingerprint result = find(key);
+			if (result == null) {
+				result = data.readStyleTable();
+				put(key, result);
+			}
+			return result;
+		}
+
+		@Override
+		public StyleTableFingerprint getStyleTable(Workbook workbook) {
+			StyleTableFingerprint result = find(key);
+			if (result == null) {
+				result = data.getStyleTable(workbook);
+				put(key, result);
+			}
+			return result;
+		}
+	}
+
+	/** Количество обращений, для которых слепок был найден в кэше */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/** Количество обращений, для которых слепок пришлось получить из книги */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/** Доля обращений, для которых слепок был найден в кэше */
+	public synchronized double getHitRate() {
+		return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+	}
+
+	/** Количество книг в кэше (включая книги, слепки которых уже освобождены) */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/** Очистка кэша, статистика обращений сохраняется */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "TemplateCache(size=" + entries.size() + ", hits=" + hits + ", misses=" + misses //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			+ ")"; //$NON-NLS-1$
+	}
+
+}
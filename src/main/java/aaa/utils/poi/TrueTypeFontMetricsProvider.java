@@ -0,0 +1,355 @@
+package aaa.utils.poi;
+
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.util.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Метрики шрифтов, прочитанные непосредственно из файлов TrueType (таблицы head, hhea, hmtx,
+ * cmap и name), без обращения к AWT и системным шрифтам. Шрифты регистрируются явно - файлами,
+ * каталогами или потоками (например, ресурсами приложения), регистрацию следует выполнить
+ * до начала измерений.
+ * <p>
+ * Шрифт подбирается по имени семейства (без учёта регистра, с учётом псевдонимов, см.
+ * {@link #alias(String, String)}) и начертанию. Если нужного начертания нет, то используется
+ * обычное начертание семейства, если нет семейства, то семейство по-умолчанию (см.
+ * {@link #setDefaultFamily(String)}, иначе первое зарегистрированное).
+ * <p>
+ * Разбиение на строки выполняется "жадным" переносом по ширинам символов без учёта кернинга,
+ * поэтому количество строк может незначительно отличаться от {@link AwtFontMetricsProvider}
+ */
+public class TrueTypeFontMetricsProvider implements FontMetricsProvider {
+
+	private static final int BOLD = 1;
+	private static final int ITALIC = 2;
+
+	/** Тег заголовка коллекции шрифтов (.ttc) */
+	private static final int COLLECTION_TAG = 0x74746366; // "ttcf"
+
+	/** Начертания семейств по имени в нижнем регистре, индекс - сочетание BOLD и ITALIC */
+	private final Map<String, Face[]> families = new ConcurrentHashMap<>();
+	/** Псевдонимы семейств, имена в нижнем регистре */
+	private final Map<String, String> aliases = new ConcurrentHashMap<>();
+	private volatile String defaultFamily;
+
+	private final Map<FontFingerprint, FontMetrics> metrics = new ConcurrentHashMap<>();
+
+	/** Регистрация шрифтов файла .ttf или .ttc */
+	public TrueTypeFontMetricsProvider register(Path file) throws IOException {
+		return register(Files.readAllBytes(file));
+	}
+
+	/** Регистрация шрифтов .ttf или .ttc, поток не закрывается */
+	public TrueTypeFontMetricsProvider register(InputStream stream) throws IOException {
+		return register(IOUtils.toByteArray(stream));
+	}
+
+	/** Регистрация шрифтов всех файлов .ttf и .ttc каталога (без подкаталогов) */
+	public TrueTypeFontMetricsProvider registerDirectory(Path directory) throws IOException {
+		try (DirectoryStream<Path> files =
+				Files.newDirectoryStream(directory, "*.{ttf,ttc,TTF,TTC}")) { //$NON-NLS-1$
+			for (Path file : files) {
+				register(file);
+			}
+		}
+		return this;
+	}
+
+	/** Регистрация шрифтов .ttf или .ttc */
+	public synchronized TrueTypeFontMetricsProvider register(byte[] data) {
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		if (buffer.getInt(0) == COLLECTION_TAG) {
+			int count = buffer.getInt(8);
+			for (int i = 0; i < count; ++i) {
+				register(Face.read(buffer, buffer.getInt(12 + 4 * i)));
+			}
+		} else {
+			register(Face.read(buffer, 0));
+		}
+		metrics.clear();
+		return this;
+	}
+
+	private void register(Face face) {
+		String family = face.family.toLowerCase(Locale.ROOT);
+		families.computeIfAbsent(family, key -> new Face[4])[face.style] = face;
+		if (defaultFamily == null) {
+			defaultFamily = family;
+		}
+	}
+
+	/**
+	 * Использование зарегистрированного семейства target для шрифтов семейства family
+	 * (например, метрически совместимого Liberation Sans для Arial)
+	 */
+	public synchronized TrueTypeFontMetricsProvider alias(String family, String target) {
+		aliases.put(family.toLowerCase(Locale.ROOT), target.toLowerCase(Locale.ROOT));
+		metrics.clear();
+		return this;
+	}
+
+	/** Семейство, используемое для шрифтов незарегистрированных семейств */
+	public synchronized TrueTypeFontMetricsProvider setDefaultFamily(String family) {
+		defaultFamily = family.toLowerCase(Locale.ROOT);
+		metrics.clear();
+		return this;
+	}
+
+	@Override
+	public FontMetrics getFontMetrics(FontFingerprint font) {
+		return metrics.computeIfAbsent(font, this::createFontMetrics);
+	}
+
+	private FontMetrics createFontMetrics(FontFingerprint font) {
+		return new TrueTypeFontMetrics(findFace(font), font.getFontHeightInPoints());
+	}
+
+	private Face[] getFaces(String family) {
+		if (family == null) {
+			return null;
+		}
+		String name = family.toLowerCase(Locale.ROOT);
+		Face[] result = families.get(name);
+		if (result == null && aliases.containsKey(name)) {
+			result = families.get(aliases.get(name));
+		}
+		return result;
+	}
+
+	private Face findFace(FontFingerprint font) {
+		Face[] faces = getFaces(font.getFontName());
+		if (faces == null) {
+			faces = getFaces(defaultFamily);
+		}
+		if (faces == null) {
+			throw new IllegalStateException("No font registered for " + font.getFontName()); //$NON-NLS-1$
+		}
+		int style = font.getBoldweight() == Font.BOLDWEIGHT_BOLD ? BOLD : 0;
+		if (font.isItalic()) {
+			style |= ITALIC;
+		}
+		for (int candidate : new int[] { style, style & BOLD, 0, BOLD, ITALIC, BOLD | ITALIC }) {
+			if (faces[candidate] != null) {
+				return faces[candidate];
+			}
+		}
+		throw new IllegalStateException("No font registered for " + font.getFontName()); //$NON-NLS-1$
+	}
+
+	private static class TrueTypeFontMetrics implements FontMetrics {
+		private final float[] advances;
+		private final float size;
+		private final double averageCharWidth;
+
+		public TrueTypeFontMetrics(Face face, float size) {
+			this.advances = face.advances;
+			this.size = size;
+			this.averageCharWidth = FontMetrics.super.getAverageCharWidth();
+		}
+
+		@Override
+		public double getStringWidth(String string) {
+			double result = 0;
+			for (int i = 0; i < string.length(); ++i) {
+				result += getCharAdvance(string.charAt(i));
+			}
+			return result;
+		}
+
+		@Override
+		public float getCharAdvance(char c) {
+			return advances[c] * size;
+		}
+
+		@Override
+		public int getLinesCount(String string, float maxWidth) {
+			return getLinesCountFast(string, maxWidth);
+		}
+
+		@Override
+		public double getAverageCharWidth() {
+			return averageCharWidth;
+		}
+	}
+
+	/** Начертание шрифта из файла TrueType */
+	private static class Face {
+		public String family;
+		public int style;
+		/** Ширины символов в долях кегля */
+		public float[] advances;
+
+		private static int readUnsignedShort(ByteBuffer data, int offset) {
+			return data.getShort(offset) & 0xFFFF;
+		}
+
+		/**
+		 * Чтение начертания из файла шрифта
+		 *
+		 * @param offset
+		 *            Смещение таблицы каталога шрифта (0 для .ttf, для шрифтов .ttc - из
+		 *            заголовка коллекции)
+		 */
+		public static Face read(ByteBuffer data, int offset) {
+			Map<String, Integer> tables = new HashMap<>();
+			int tableCount = readUnsignedShort(data, offset + 4);
+			for (int i = 0; i < tableCount; ++i) {
+				int record = offset + 12 + 16 * i;
+				byte[] tag = new byte[4];
+				for (int j = 0; j < tag.length; ++j) {
+					tag[j] = data.get(record + j);
+				}
+				tables.put(new String(tag, StandardCharsets.ISO_8859_1), data.getInt(record + 8));
+			}
+			int head = getTable(tables, "head"); //$NON-NLS-1$
+			int hhea = getTable(tables, "hhea"); //$NON-NLS-1$
+			int hmtx = getTable(tables, "hmtx"); //$NON-NLS-1$
+
+			Face face = new Face();
+			face.family = readFamily(data, getTable(tables, "name")); //$NON-NLS-1$
+			int macStyle = readUnsignedShort(data, head + 44);
+			face.style = ((macStyle & 1) != 0 ? BOLD : 0) | ((macStyle & 2) != 0 ? ITALIC : 0);
+
+			float unitsPerEm = readUnsignedShort(data, head + 18);
+			int metricsCount = readUnsignedShort(data, hhea + 34);
+			int[] glyphs = readCharacterMap(data, getTable(tables, "cmap")); //$NON-NLS-1$
+			face.advances = new float[glyphs.length];
+			for (int c = 0; c < glyphs.length; ++c) {
+				int metric = Math.min(glyphs[c], metricsCount - 1);
+				face.advances[c] = readUnsignedShort(data, hmtx + 4 * metric) / unitsPerEm;
+			}
+			return face;
+		}
+
+		private static int getTable(Map<String, Integer> tables, String tag) {
+			Integer result = tables.get(tag);
+			if (result == null) {
+				throw new IllegalArgumentException("Not a TrueType font: no " + tag + " table"); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			return result;
+		}
+
+		/** Имя семейства (запись 1 таблицы name), предпочтительно английское */
+		private static String readFamily(ByteBuffer data, int name) {
+			int count = readUnsignedShort(data, name + 2);
+			int strings = name + readUnsignedShort(data, name + 4);
+			String result = null;
+			int resultPriority = 0;
+			for (int i = 0; i < count; ++i) {
+				int record = name + 6 + 12 * i;
+				int platform = readUnsignedShort(data, record);
+				int language = readUnsignedShort(data, record + 4);
+				if (readUnsignedShort(data, record + 6) != 1) {
+					continue;
+				}
+				int priority = 0;
+				if (platform == 3) {
+					priority = language == 0x409 ? 3 : 2;
+				} else if (platform == 0 || platform == 1) {
+					priority = 1;
+				}
+				if (priority > resultPriority) {
+					byte[] bytes = new byte[readUnsignedShort(data, record + 8)];
+					int start = strings + readUnsignedShort(data, record + 10);
+					for (int j = 0; j < bytes.length; ++j) {
+						bytes[j] = data.get(start + j);
+					}
+					result =
+							new String(	bytes,
+										platform == 1 ? StandardCharsets.ISO_8859_1
+											: StandardCharsets.UTF_16BE);
+					resultPriority = priority;
+				}
+			}
+			if (result == null) {
+				throw new IllegalArgumentException("Not a TrueType font: no family name"); //$NON-NLS-1$
+			}
+			return result;
+		}
+
+		/**
+		 * Индексы глифов символов по таблице cmap (подтаблицы Unicode форматов 4 и 12),
+		 * для отсутствующих в шрифте символов - 0
+		 */
+		private static int[] readCharacterMap(ByteBuffer data, int cmap) {
+			int[] result = new int[Character.MAX_VALUE + 1];
+			int subtable = -1;
+			int subtablePriority = 0;
+			int count = readUnsignedShort(data, cmap + 2);
+			for (int i = 0; i < count; ++i) {
+				int record = cmap + 4 + 8 * i;
+				int platform = readUnsignedShort(data, record);
+				int encoding = readUnsignedShort(data, record + 2);
+				int offset = cmap + data.getInt(record + 4);
+				int format = readUnsignedShort(data, offset);
+				int priority = 0;
+				if (platform == 0 || platform == 3 && (encoding == 1 || encoding == 10)) {
+					priority = format == 12 ? 2 : format == 4 ? 1 : 0;
+				}
+				if (priority > subtablePriority) {
+					subtable = offset;
+					subtablePriority = priority;
+				}
+			}
+			if (subtablePriority == 2) {
+				readSegmentedCoverage(data, subtable, result);
+			} else if (subtablePriority == 1) {
+				readSegmentMapping(data, subtable, result);
+			}
+			return result;
+		}
+
+		/** Чтение подтаблицы cmap формата 4 */
+		private static void readSegmentMapping(ByteBuffer data, int subtable, int[] result) {
+			int segmentCount = readUnsignedShort(data, subtable + 6) / 2;
+			int ends = subtable + 14;
+			int starts = ends + 2 * segmentCount + 2;
+			int deltas = starts + 2 * segmentCount;
+			int rangeOffsets = deltas + 2 * segmentCount;
+			for (int segment = 0; segment < segmentCount; ++segment) {
+				int end = readUnsignedShort(data, ends + 2 * segment);
+				int start = readUnsignedShort(data, starts + 2 * segment);
+				int delta = readUnsignedShort(data, deltas + 2 * segment);
+				int rangeOffsetAddress = rangeOffsets + 2 * segment;
+				int rangeOffset = readUnsignedShort(data, rangeOffsetAddress);
+				for (int c = start; c <= end; ++c) {
+					int glyph;
+					if (rangeOffset == 0) {
+						glyph = (c + delta) & 0xFFFF;
+					} else {
+						int address = rangeOffsetAddress + rangeOffset + 2 * (c - start);
+						glyph = address + 2 <= data.limit() ? readUnsignedShort(data, address) : 0;
+						glyph = glyph == 0 ? 0 : (glyph + delta) & 0xFFFF;
+					}
+					result[c] = glyph;
+				}
+			}
+		}
+
+		/** Чтение подтаблицы cmap формата 12 (используются только символы до U+FFFF) */
+		private static void readSegmentedCoverage(ByteBuffer data, int subtable, int[] result) {
+			int groupCount = data.getInt(subtable + 12);
+			for (int i = 0; i < groupCount; ++i) {
+				int group = subtable + 16 + 12 * i;
+				long start = data.getInt(group) & 0xFFFFFFFFL;
+				long end = Math.min(data.getInt(group + 4) & 0xFFFFFFFFL, Character.MAX_VALUE);
+				int glyph = data.getInt(group + 8);
+				for (long c = start; c <= end; ++c) {
+					result[(int) c] = glyph + (int) (c - start);
+				}
+			}
+		}
+	}
+
+}
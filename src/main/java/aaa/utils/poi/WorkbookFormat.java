@@ -0,0 +1,111 @@
+package aaa.utils.poi;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Формат рабочей книги, в котором функции {@link SSUtils} создают книги (целевые книги
+ * соединения, книги отчётов)
+ */
+public enum WorkbookFormat {
+
+	/** Книга XLS (Excel 97-2003), не более 65536 строк на лист */
+	HSSF(SpreadsheetVersion.EXCEL97, "xls") { //$NON-NLS-1$
+		@Override
+		public Workbook create(int rowAccessWindowSize) {
+			return new HSSFWorkbook();
+		}
+
+		@Override
+		public Workbook read(InputStream stream) throws IOException {
+			return new HSSFWorkbook(stream);
+		}
+	},
+
+	/** Книга XLSX, полностью находящаяся в памяти */
+	XSSF(SpreadsheetVersion.EXCEL2007, "xlsx") { //$NON-NLS-1$
+		@Override
+		public Workbook create(int rowAccessWindowSize) {
+			return new XSSFWorkbook();
+		}
+
+		@Override
+		public Workbook read(InputStream stream) throws IOException {
+			return new XSSFWorkbook(stream);
+		}
+	},
+
+	/**
+	 * Потоковая книга XLSX: в памяти находятся только последние созданные строки листа
+	 * (окно строк), более ранние строки сбрасываются во временный файл и становятся недоступны.
+	 * Строки необходимо создавать по возрастанию индексов, а после записи книги освобождать
+	 * временные файлы ({@link SXSSFWorkbook#dispose()})
+	 */
+	SXSSF(SpreadsheetVersion.EXCEL2007, "xlsx") { //$NON-NLS-1$
+		@Override
+		public Workbook create(int rowAccessWindowSize) {
+			return new SXSSFWorkbook(rowAccessWindowSize);
+		}
+
+		/** Строки прочитанной книги доступны, новые строки добавляются в потоковом режиме */
+		@Override
+		public Workbook read(InputStream stream) throws IOException {
+			return new SXSSFWorkbook(new XSSFWorkbook(stream), SXSSFWorkbook.DEFAULT_WINDOW_SIZE);
+		}
+	};
+
+	private final SpreadsheetVersion version;
+	private final String fileExtension;
+
+	private WorkbookFormat(SpreadsheetVersion version, String fileExtension) {
+		this.version = version;
+		this.fileExtension = fileExtension;
+	}
+
+	/** Ограничения формата (количество строк, столбцов и т.п.) */
+	public SpreadsheetVersion getVersion() {
+		return version;
+	}
+
+	/** Расширение файлов книг формата (без точки) */
+	public String getFileExtension() {
+		return fileExtension;
+	}
+
+	/** Создание пустой книги, для {@link #SXSSF} - с окном строк по-умолчанию */
+	public Workbook create() {
+		return create(SXSSFWorkbook.DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Создание пустой книги
+	 *
+	 * @param rowAccessWindowSize
+	 *            Количество строк листа, находящихся в памяти (только для {@link #SXSSF})
+	 */
+	public abstract Workbook create(int rowAccessWindowSize);
+
+	/** Чтение книги формата */
+	public abstract Workbook read(InputStream stream) throws IOException;
+
+	/** Определение формата книги */
+	public static WorkbookFormat of(Workbook workbook) {
+		if (workbook instanceof HSSFWorkbook) {
+			return HSSF;
+		}
+		if (workbook instanceof SXSSFWorkbook) {
+			return SXSSF;
+		}
+		if (workbook instanceof XSSFWorkbook) {
+			return XSSF;
+		}
+		throw new IllegalArgumentException("Unsupported workbook " + workbook); //$NON-NLS-1$
+	}
+
+}
@@ -0,0 +1,121 @@
+package aaa.utils.poi;
+
+import lombok.AllArgsConstructor;
+import org.apache.poi.hssf.usermodel.HSSFStyleTableReader;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * Источник исходной книги XLS для соединения книг и сбора стилей
+ * (см. {@link SSUtils#collectToSingleWorkBook(Iterable, Integer, Integer, boolean, Double, Double)}).
+ * Книга читается только при обращении к источнику, поэтому список источников не требует
+ * предварительной загрузки содержимого всех книг в память
+ */
+public abstract class WorkbookSource {
+
+	/** Открытие потока чтения книги, каждый вызов должен возвращать новый поток */
+	@FunctionalInterface
+	public interface StreamSupplier {
+		InputStream open() throws IOException;
+	}
+
+	/** Разбор книги */
+	public abstract Workbook readWorkbook() throws IOException;
+
+	/**
+	 * Чтение таблиц шрифтов и стилей книги без разбора её листов
+	 * (см. {@link HSSFStyleTableReader})
+	 */
+	public abstract StyleTableFingerprint readStyleTable() throws IOException;
+
+	/** Получение слепка таблиц шрифтов и стилей книги, уже разобранной {@link #readWorkbook()} */
+	public StyleTableFingerprint getStyleTable(Workbook workbook) {
+		return StyleTableFingerprint.of(workbook);
+	}
+
+	/** Книга, содержимое которой уже находится в памяти */
+	public static WorkbookSource of(byte[] data) {
+		return new BytesSource(data);
+	}
+
+	/**
+	 * Файл книги. Файл открывается только для чтения и отображается в память, поэтому его
+	 * содержимое не копируется в кучу целиком, а при чтении стилей читается только
+	 * глобальный раздел книги. Файл закрывается сразу после чтения
+	 */
+	public static WorkbookSource of(Path path) {
+		return new FileSource(path);
+	}
+
+	/**
+	 * Книга, читаемая из потока. Поток открывается при каждом обращении к источнику
+	 * и закрывается после чтения
+	 */
+	public static WorkbookSource of(StreamSupplier streams) {
+		return new StreamSource(streams);
+	}
+
+	@AllArgsConstructor
+	private static class BytesSource extends WorkbookSource {
+		private final byte[] data;
+
+		@Override
+		public Workbook readWorkbook() throws IOException {
+			return new HSSFWorkbook(new ByteArrayInputStream(data));
+		}
+
+		@Override
+		public StyleTableFingerprint readStyleTable() throws IOException {
+			return HSSFStyleTableReader.read(data);
+		}
+	}
+
+	@AllArgsConstructor
+	private static class FileSource extends WorkbookSource {
+		private final Path path;
+
+		/**
+		 * Узлы файловой системы книги не сохраняются (в отличие от чтения из потока), так как
+		 * после закрытия файла они недоступны. Для копирования содержимого книги они не нужны
+		 */
+		@Override
+		public Workbook readWorkbook() throws IOException {
+			try (NPOIFSFileSystem fileSystem = new NPOIFSFileSystem(path.toFile(), true)) {
+				return new HSSFWorkbook(fileSystem.getRoot(), false);
+			}
+		}
+
+		@Override
+		public StyleTableFingerprint readStyleTable() throws IOException {
+			try (NPOIFSFileSystem fileSystem = new NPOIFSFileSystem(path.toFile(), true)) {
+				return HSSFStyleTableReader.read(fileSystem.getRoot());
+			}
+		}
+	}
+
+	@AllArgsConstructor
+	private static class StreamSource extends WorkbookSource {
+		private final StreamSupplier streams;
+
+		@Override
+		public Workbook readWorkbook() throws IOException {
+			try (InputStream stream = streams.open()) {
+				return new HSSFWorkbook(stream);
+			}
+		}
+
+		@Override
+		public StyleTableFingerprint readStyleTable() throws IOException {
+			try (InputStream stream = streams.open()) {
+				return HSSFStyleTableReader.read(stream);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+package org.apache.poi.hssf.usermodel;
+
+import aaa.utils.poi.FontFingerprint;
+import aaa.utils.poi.StyleFingerprint;
+import aaa.utils.poi.StyleTableFingerprint;
+import org.apache.poi.hssf.model.InternalWorkbook;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RecordFactoryInputStream;
+import org.apache.poi.poifs.filesystem.DirectoryNode;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Чтение таблиц шрифтов и стилей книги XLS без разбора её листов: читаются только записи
+ * глобального раздела книги (до первой записи EOF). Результат совпадает с
+ * {@link StyleTableFingerprint#of(org.apache.poi.ss.usermodel.Workbook)} для полностью
+ * разобранной книги, но получается в разы быстрее и без загрузки содержимого листов в память
+ */
+public class HSSFStyleTableReader {
+
+	public static StyleTableFingerprint read(byte[] data) throws IOException {
+		return read(new ByteArrayInputStream(data));
+	}
+
+	public static StyleTableFingerprint read(InputStream stream) throws IOException {
+		return read(new POIFSFileSystem(stream).getRoot());
+	}
+
+	public static StyleTableFingerprint read(DirectoryNode directory) throws IOException {
+		List<Record> records = new ArrayList<>();
+		try (InputStream stream =
+				directory.createDocumentInputStream(HSSFWorkbook.getWorkbookDirEntryName(directory))) {
+			RecordFactoryInputStream recordStream = new RecordFactoryInputStream(stream, true);
+			for (Record record = recordStream.nextRecord(); record != null; record =
+					recordStream.nextRecord()) {
+				records.add(record);
+				if (record instanceof EOFRecord) {
+					break;
+				}
+			}
+		}
+		return read(InternalWorkbook.createWorkbook(records));
+	}
+
+	/** Получение слепка по аналогии с {@link HSSFWorkbook#getFontAt} и {@link HSSFWorkbook#getCellStyleAt} */
+	private static StyleTableFingerprint read(InternalWorkbook workbook) {
+		List<FontFingerprint> fonts = new ArrayList<>(workbook.getNumberOfFontRecords());
+		for (short i = 0; i < workbook.getNumberOfFontRecords(); ++i) {
+			fonts.add(FontFingerprint.of(new HSSFFont(i, workbook.getFontRecordAt(i))));
+		}
+		List<StyleFingerprint> styles = new ArrayList<>(workbook.getNumExFormats());
+		for (short i = 0; i < workbook.getNumExFormats(); ++i) {
+			HSSFCellStyle style = new HSSFCellStyle(i, workbook.getExFormatAt(i), workbook);
+			short fontIndex = style.getFontIndex();
+			styles.add(StyleFingerprint.of(style, new HSSFFont(	fontIndex,
+																workbook.getFontRecordAt(fontIndex))));
+		}
+		return new StyleTableFingerprint(	Collections.unmodifiableList(fonts),
+											Collections.unmodifiableList(styles));
+	}
+
+}
@@ -1,33 +1,92 @@
 package org.apache.poi.ss.usermodel;
 
+import aaa.utils.poi.AwtFontMetricsProvider;
+import aaa.utils.poi.FontFingerprint;
+import aaa.utils.poi.FontMetricsProvider;
+import aaa.utils.poi.FontMetricsProvider.FontMetrics;
+import aaa.utils.poi.LineCountCache;
+import aaa.utils.poi.MergedRegionIndex;
+import aaa.utils.poi.RowSampling;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.poi.ss.util.CellRangeAddress;
 
-import java.awt.font.FontRenderContext;
-import java.awt.font.LineBreakMeasurer;
-import java.awt.font.TextAttribute;
-import java.awt.font.TextLayout;
-import java.text.AttributedString;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+import java.util.function.IntSupplier;
 
 public class HSSFExtraTools {
 
-	private static void copyAttributes(Font font, AttributedString str, int startIdx, int endIdx) {
-		str.addAttribute(TextAttribute.FAMILY, font.getFontName(), startIdx, endIdx);
-		str.addAttribute(TextAttribute.SIZE, new Float(font.getFontHeightInPoints()));
-		if (font.getBoldweight() == Font.BOLDWEIGHT_BOLD) {
-			str.addAttribute(TextAttribute.WEIGHT, TextAttribute.WEIGHT_BOLD, startIdx, endIdx);
-		}
-		if (font.getItalic()) {
-			str.addAttribute(TextAttribute.POSTURE, TextAttribute.POSTURE_OBLIQUE, startIdx, endIdx);
-		}
-		if (font.getUnderline() == Font.U_SINGLE) {
-			str.addAttribute(TextAttribute.UNDERLINE, TextAttribute.UNDERLINE_ON, startIdx, endIdx);
+	/** Source of the font metrics, initialized on first use */
+	private static volatile FontMetricsProvider fontMetricsProvider;
+
+	/** Height of a text line in points */
+	private static final double LINE_HEIGHT = 12.75;
+
+	/** Space added to the autosized column widths, in characters */
+	private static final double COLUMN_PADDING = 1;
+
+	/** Maximum column width in 1/256 of a character */
+	private static final int MAX_COLUMN_WIDTH = 255 * 256;
+
+	/** Ways of counting the lines a cell text is wrapped into */
+	public enum TextMeasurement {
+		/**
+		 * Line breaking of the font metrics provider (with
+		 * {@link java.awt.font.LineBreakMeasurer} for {@link AwtFontMetricsProvider})
+		 */
+		EXACT,
+		/**
+		 * Greedy word wrap over cached character advances of the font: several times faster
+		 * than {@link #EXACT}, but ignores kerning and complex line breaking rules, so the
+		 * line count may differ slightly (see
+		 * {@link HSSFExtraTools#validateFastMeasurement(Workbook, Sheet, MergedRegionIndex, double)})
+		 */
+		FAST
+	}
+
+	/**
+	 * Returns the source of the font metrics used to measure the texts. Unless set with
+	 * {@link #setFontMetricsProvider(FontMetricsProvider)}, the first provider registered with
+	 * {@link ServiceLoader} is used, or {@link AwtFontMetricsProvider} if there is none
+	 */
+	public static FontMetricsProvider getFontMetricsProvider() {
+		FontMetricsProvider result = fontMetricsProvider;
+		if (result == null) {
+			synchronized (HSSFExtraTools.class) {
+				result = fontMetricsProvider;
+				if (result == null) {
+					Iterator<FontMetricsProvider> providers =
+							ServiceLoader.load(FontMetricsProvider.class).iterator();
+					result = providers.hasNext() ? providers.next() : new AwtFontMetricsProvider();
+					fontMetricsProvider = result;
+				}
+			}
 		}
+		return result;
 	}
 
-	private static boolean containsCell(CellRangeAddress cellRange, int rowIndex, int colIndex) {
-		return cellRange.getFirstRow() <= rowIndex && cellRange.getLastRow() >= rowIndex
-			&& cellRange.getFirstColumn() <= colIndex && cellRange.getLastColumn() >= colIndex;
+	/**
+	 * Sets the source of the font metrics used to measure the texts. A {@link LineCountCache}
+	 * filled with the previous provider should not be used afterwards
+	 */
+	public static void setFontMetricsProvider(FontMetricsProvider provider) {
+		fontMetricsProvider = provider;
+	}
+
+	/** Text of a cell detached from the workbook, so that it can be measured in any thread */
+	private static class CellText {
+		/** Text of the cell, or null if the cell is not a string one */
+		public String value;
+		public FontFingerprint font;
+		public int widthInChars;
+		public int mergedHeight;
 	}
 
 	/**
@@ -37,6 +96,11 @@ public class HSSFExtraTools {
 	 * content of merged cells should be considered or ignored. Default is to
 	 * ignore merged cells.
 	 * 
+	 * <p>
+	 * The merged regions of the sheet are scanned on each call, so to size many rows of
+	 * a sheet with merged cells build a {@link MergedRegionIndex} once and use
+	 * {@link #calculateRowSize(Workbook, Sheet, Row, MergedRegionIndex)} instead
+	 * 
 	 * @param useMergedCells
 	 *            whether to use the contents of merged cells when calculating
 	 *            the width of the column
@@ -45,49 +109,174 @@ public class HSSFExtraTools {
 											Sheet sheet,
 											Row row,
 											boolean useMergedCells) {
-		double height = -1;
-		if (workbook != null && sheet != null && row != null) {
-			for (Cell cell : row) {
-				if (cell != null) {
-					int cellIndex = cell.getColumnIndex();
-
-					int widthInChars = sheet.getColumnWidth(cell.getColumnIndex());
-					int mergedHeight = 1;
-					if (useMergedCells) {
-						for (int i = 0; i < sheet.getNumMergedRegions(); i++) {
-							CellRangeAddress region = sheet.getMergedRegion(i);
-							if (containsCell(region, row.getRowNum(), cellIndex)) {
-								cell =
-										sheet.getRow(region.getFirstRow())
-												.getCell(region.getFirstColumn());
-								widthInChars = 0;
-								for (int j = region.getFirstColumn(); j <= region.getLastColumn(); ++j) {
-									widthInChars += sheet.getColumnWidth(j);
-								}
-								mergedHeight = region.getLastRow() - region.getFirstRow() + 1;
-								break;
-							}
+		List<CellText> texts =
+				getRowTexts(workbook, sheet, row, useMergedCells ? getRowRegions(sheet, row) : null);
+		return texts == null ? null : calculateRowSize(texts, TextMeasurement.EXACT, null);
+	}
+
+	/**
+	 * Adjusts the row height to fit the contents (see
+	 * {@link #calculateRowSize(Workbook, Sheet, Row, boolean)}).
+	 * 
+	 * @param mergedRegions
+	 *            index of the merged regions of the sheet to use the contents of merged cells,
+	 *            or null to ignore merged cells. The index may be built once and shared by
+	 *            all rows of the sheet
+	 */
+	public static Double calculateRowSize(	Workbook workbook,
+											Sheet sheet,
+											Row row,
+											MergedRegionIndex mergedRegions) {
+		return calculateRowSize(workbook, sheet, row, mergedRegions, TextMeasurement.EXACT);
+	}
+
+	/**
+	 * Adjusts the row height to fit the contents (see
+	 * {@link #calculateRowSize(Workbook, Sheet, Row, MergedRegionIndex)}).
+	 * 
+	 * @param measurement
+	 *            the way the text lines are counted
+	 */
+	public static Double calculateRowSize(	Workbook workbook,
+											Sheet sheet,
+											Row row,
+											MergedRegionIndex mergedRegions,
+											TextMeasurement measurement) {
+		return calculateRowSize(workbook, sheet, row, mergedRegions, measurement, null);
+	}
+
+	/**
+	 * Adjusts the row height to fit the contents (see
+	 * {@link #calculateRowSize(Workbook, Sheet, Row, MergedRegionIndex, TextMeasurement)}).
+	 * 
+	 * @param lineCounts
+	 *            cache of the line counts of the texts already measured, or null to measure
+	 *            every text
+	 */
+	public static Double calculateRowSize(	Workbook workbook,
+											Sheet sheet,
+											Row row,
+											MergedRegionIndex mergedRegions,
+											TextMeasurement measurement,
+											LineCountCache lineCounts) {
+		List<CellText> texts = getRowTexts(workbook, sheet, row, mergedRegions);
+		return texts == null ? null : calculateRowSize(texts, measurement, lineCounts);
+	}
+
+	/** Collects the texts of the row cells, looking the merged regions up in the index */
+	private static List<CellText> getRowTexts(	Workbook workbook,
+												Sheet sheet,
+												Row row,
+												MergedRegionIndex mergedRegions) {
+		IntFunction<CellRangeAddress> findRegion = null;
+		if (mergedRegions != null) {
+			findRegion = column -> mergedRegions.find(row.getRowNum(), column);
+		}
+		return getRowTexts(workbook, sheet, row, findRegion);
+	}
+
+	/**
+	 * Finds the merged regions containing the cells of the row with a single scan of the merged
+	 * regions of the sheet, which is cheaper than building a {@link MergedRegionIndex} when only
+	 * one row is measured. Returns null if there is no row
+	 */
+	private static IntFunction<CellRangeAddress> getRowRegions(Sheet sheet, Row row) {
+		if (sheet == null || row == null) {
+			return null;
+		}
+		List<CellRangeAddress> regions = new ArrayList<>();
+		for (int i = 0; i < sheet.getNumMergedRegions(); i++) {
+			CellRangeAddress region = sheet.getMergedRegion(i);
+			if (region.getFirstRow() <= row.getRowNum() && region.getLastRow() >= row.getRowNum()) {
+				regions.add(region);
+			}
+		}
+		return column -> {
+			for (CellRangeAddress region : regions) {
+				if (region.getFirstColumn() <= column && region.getLastColumn() >= column) {
+					return region;
+				}
+			}
+			return null;
+		};
+	}
+
+	/**
+	 * Collects the texts of the row cells with everything needed to measure them
+	 * 
+	 * @param findRegion
+	 *            finds the merged region containing the cell of the row in the given column
+	 *            (the first one in the order of the sheet), or null to ignore merged cells
+	 */
+	private static List<CellText> getRowTexts(	Workbook workbook,
+												Sheet sheet,
+												Row row,
+												IntFunction<CellRangeAddress> findRegion) {
+		if (workbook == null || sheet == null || row == null) {
+			return null;
+		}
+		List<CellText> result = new ArrayList<>();
+		for (Cell cell : row) {
+			if (cell != null) {
+				int cellIndex = cell.getColumnIndex();
+
+				int widthInChars = sheet.getColumnWidth(cell.getColumnIndex());
+				int mergedHeight = 1;
+				if (findRegion != null) {
+					CellRangeAddress region = findRegion.apply(cellIndex);
+					if (region != null) {
+						cell = sheet.getRow(region.getFirstRow()).getCell(region.getFirstColumn());
+						widthInChars = 0;
+						for (int j = region.getFirstColumn(); j <= region.getLastColumn(); ++j) {
+							widthInChars += sheet.getColumnWidth(j);
 						}
+						mergedHeight = region.getLastRow() - region.getFirstRow() + 1;
 					}
+				}
 
-					Font font = workbook.getFontAt(cell.getCellStyle().getFontIndex());
-					double[] etalon_h = getCharDimensions(TEST_STRING_H, font);
-					etalon_h[1] = 12.75;
-					widthInChars /= 256;
-					double newHeight = 0;
-					if (cell.getCellType() == Cell.CELL_TYPE_STRING) {
-						RichTextString rt = cell.getRichStringCellValue();
-						String value = rt.getString();
-						newHeight =
-								getStringLinesCount(StringUtils.split(value, "\n\r"), //$NON-NLS-1$
-													font,
-													(float) (widthInChars * etalon_h[0]))
-									* etalon_h[1];
-					}
-					height = Math.max(height, newHeight / mergedHeight);
+				CellText text = new CellText();
+				text.font =
+						FontFingerprint.of(workbook.getFontAt(cell.getCellStyle().getFontIndex()));
+				text.widthInChars = widthInChars / 256;
+				text.mergedHeight = mergedHeight;
+				if (cell.getCellType() == Cell.CELL_TYPE_STRING) {
+					text.value = cell.getRichStringCellValue().getString();
 				}
+				result.add(text);
 			}
 		}
+		return result;
+	}
+
+	/** Calculates the row height from the collected texts, does not access the workbook */
+	private static Double calculateRowSize(	List<CellText> texts,
+											TextMeasurement measurement,
+											LineCountCache lineCounts) {
+		FontMetricsProvider provider = getFontMetricsProvider();
+		double height = -1;
+		for (CellText text : texts) {
+			double newHeight = 0;
+			if (text.value != null) {
+				String value = text.value;
+				FontFingerprint font = text.font;
+				FontMetrics metrics = provider.getFontMetrics(font);
+				float maxWidth = (float) (text.widthInChars * metrics.getAverageCharWidth());
+				IntSupplier counter =
+						() -> getStringLinesCount(	StringUtils.split(value, "\n\r"), //$NON-NLS-1$
+													metrics,
+													maxWidth,
+													measurement);
+				int linesCount;
+				if (lineCounts == null) {
+					linesCount = counter.getAsInt();
+				} else {
+					linesCount =
+							lineCounts.getLinesCount(value, font, maxWidth, measurement, counter);
+				}
+				newHeight = linesCount * LINE_HEIGHT;
+			}
+			height = Math.max(height, newHeight / text.mergedHeight);
+		}
 		return height >= 0 ? Math.min(height, Short.MAX_VALUE) : null;
 	}
 
@@ -98,6 +287,12 @@ public class HSSFExtraTools {
 		return calculateRowSize(workbook, sheet, sheet.getRow(rowIndex), useMergedCells);
 	}
 
+	/**
+	 * Adjusts the row height to fit the contents (see
+	 * {@link #calculateRowSize(Workbook, Sheet, Row, boolean)}). The merged regions of the sheet
+	 * are scanned on each call, to size many rows use
+	 * {@link #autoSizeRow(Workbook, Sheet, Row, MergedRegionIndex)} with an index built once
+	 */
 	public static void autoSizeRow(Workbook workbook, Sheet sheet, Row row, boolean useMergedCells) {
 		Double height = calculateRowSize(workbook, sheet, row, useMergedCells);
 		if (height != null) {
@@ -105,6 +300,34 @@ public class HSSFExtraTools {
 		}
 	}
 
+	public static void autoSizeRow(	Workbook workbook,
+									Sheet sheet,
+									Row row,
+									MergedRegionIndex mergedRegions) {
+		autoSizeRow(workbook, sheet, row, mergedRegions, TextMeasurement.EXACT);
+	}
+
+	public static void autoSizeRow(	Workbook workbook,
+									Sheet sheet,
+									Row row,
+									MergedRegionIndex mergedRegions,
+									TextMeasurement measurement) {
+		autoSizeRow(workbook, sheet, row, mergedRegions, measurement, null);
+	}
+
+	public static void autoSizeRow(	Workbook workbook,
+									Sheet sheet,
+									Row row,
+									MergedRegionIndex mergedRegions,
+									TextMeasurement measurement,
+									LineCountCache lineCounts) {
+		Double height =
+				calculateRowSize(workbook, sheet, row, mergedRegions, measurement, lineCounts);
+		if (height != null) {
+			row.setHeightInPoints(height.floatValue());
+		}
+	}
+
 	public static void autoSizeRow(	Workbook workbook,
 									Sheet sheet,
 									int rowIndex,
@@ -112,47 +335,240 @@ public class HSSFExtraTools {
 		autoSizeRow(workbook, sheet, sheet.getRow(rowIndex), useMergedCells);
 	}
 
-	private static final String TEST_STRING_H =
-			"asdaklsjdklsajd|wwwwwwwwwwwwwwwwwwwww!@#$%^&*()lkjsalkdjlsakjdlsakqiowuiobv[]z1234567890_+-="; //$NON-NLS-1$
-
-	@SuppressWarnings("unused")
-	private static final String TEST_STRING_V =
-			"LineBreakMeasurer is constructed with an iterator over styled text. The iterator's range should be a single paragraph in the text."; //$NON-NLS-1$
+	/**
+	 * Adjusts the height of every row of the sheet to fit the contents, measuring the rows in
+	 * parallel. The texts are collected from the sheet in the calling thread, measured in the
+	 * pool, and the heights are then set in the calling thread, so the workbook itself is never
+	 * accessed concurrently. The resulting heights are the same as with
+	 * {@link #autoSizeRow(Workbook, Sheet, Row, MergedRegionIndex)}
+	 * 
+	 * @param mergedRegions
+	 *            index of the merged regions of the sheet to use the contents of merged cells,
+	 *            or null to ignore merged cells
+	 */
+	public static void autoSizeRows(	Workbook workbook,
+									Sheet sheet,
+									MergedRegionIndex mergedRegions,
+									ForkJoinPool pool) {
+		autoSizeRows(workbook, sheet, mergedRegions, pool, TextMeasurement.EXACT);
+	}
 
-	private static double[] getCharDimensions(String string, Font font) {
-		double[] sizes = getStringSizes(string, font);
-		return new double[] { sizes[0] / string.length(), sizes[1] };
+	public static void autoSizeRows(	Workbook workbook,
+									Sheet sheet,
+									MergedRegionIndex mergedRegions,
+									ForkJoinPool pool,
+									TextMeasurement measurement) {
+		autoSizeRows(workbook, sheet, mergedRegions, pool, measurement, null);
 	}
 
-	private static double[] getStringSizes(String string, Font font) {
-		AttributedString str = new AttributedString(string);
-		FontRenderContext frc = new FontRenderContext(null, true, true);
-		copyAttributes(font, str, 0, string.length() - 1);
-		TextLayout layout = new TextLayout(str.getIterator(), frc);
-		double width = layout.getBounds().getWidth();
-		double height = layout.getBounds().getHeight();
-		return new double[] { width, height };
+	public static void autoSizeRows(	Workbook workbook,
+									Sheet sheet,
+									MergedRegionIndex mergedRegions,
+									ForkJoinPool pool,
+									TextMeasurement measurement,
+									LineCountCache lineCounts) {
+		List<Row> rows = new ArrayList<>();
+		List<List<CellText>> texts = new ArrayList<>();
+		for (Row row : sheet) {
+			rows.add(row);
+			texts.add(getRowTexts(workbook, sheet, row, mergedRegions));
+		}
+		Double[] heights =
+				pool.submit(() -> texts.parallelStream()
+						.map(rowTexts -> calculateRowSize(rowTexts, measurement, lineCounts))
+						.toArray(Double[]::new)).join();
+		for (int i = 0; i < heights.length; ++i) {
+			if (heights[i] != null) {
+				rows.get(i).setHeightInPoints(heights[i].floatValue());
+			}
+		}
 	}
 
-	private static int getStringLinesCount(String[] strings, Font font, float maxWidth) {
-		int result = 0;
-		for (String string : strings) {
-			result += getStringLinesCount(string, font, maxWidth);
+	/**
+	 * Compares the row heights calculated with {@link TextMeasurement#FAST} to the exact ones,
+	 * so that the fast measurement can be checked on a representative sheet before being used
+	 * 
+	 * @param toleranceInPoints
+	 *            maximum acceptable difference between the fast and the exact row height
+	 * @return indices of the rows whose heights differ by more than the tolerance
+	 */
+	public static List<Integer> validateFastMeasurement(Workbook workbook,
+														Sheet sheet,
+														MergedRegionIndex mergedRegions,
+														double toleranceInPoints) {
+		List<Integer> result = new ArrayList<>();
+		for (Row row : sheet) {
+			List<CellText> texts = getRowTexts(workbook, sheet, row, mergedRegions);
+			Double exact =
+					texts == null ? null : calculateRowSize(texts, TextMeasurement.EXACT, null);
+			Double fast =
+					texts == null ? null : calculateRowSize(texts, TextMeasurement.FAST, null);
+			if (exact != null && fast != null && Math.abs(exact - fast) > toleranceInPoints) {
+				result.add(row.getRowNum());
+			}
 		}
 		return result;
 	}
 
-	private static int getStringLinesCount(String string, Font font, float maxWidth) {
-		if (StringUtils.length(string) <= 1) {
-			return 1;
+	/**
+	 * Adjusts the width of the columns to fit the contents. All the columns are measured in a
+	 * single pass over the rows, unlike {@link Sheet#autoSizeColumn(int)}, which scans the sheet
+	 * once per column. The text width is converted to the column width with the average
+	 * character width of the cell font, the same way {@link #calculateRowSize} converts it
+	 * back, so that the texts of the autosized columns are not wrapped
+	 * 
+	 * @param columns
+	 *            indices of the columns to adjust, if none are given every column with cells
+	 *            is adjusted
+	 */
+	public static void autoSizeColumns(Workbook workbook, Sheet sheet, int... columns) {
+		autoSizeColumns(workbook,
+						sheet,
+						MergedRegionIndex.of(sheet),
+						RowSampling.ALL,
+						TextMeasurement.EXACT,
+						columns);
+	}
+
+	/**
+	 * Adjusts the width of the columns to fit the contents (see
+	 * {@link #autoSizeColumns(Workbook, Sheet, int...)}). The columns not containing any
+	 * measured text keep their width
+	 * 
+	 * @param mergedRegions
+	 *            index of the merged regions of the sheet to spread the width of merged cells
+	 *            over their columns, or null to measure merged cells as ordinary ones
+	 * @param sampling
+	 *            rows to measure, on large sheets a sample is usually enough to estimate the
+	 *            widths
+	 * @param measurement
+	 *            the way the texts are measured, {@link TextMeasurement#FAST} sums the cached
+	 *            character advances
+	 */
+	public static void autoSizeColumns(	Workbook workbook,
+										Sheet sheet,
+										MergedRegionIndex mergedRegions,
+										RowSampling sampling,
+										TextMeasurement measurement,
+										int... columns) {
+		BitSet selected = null;
+		if (columns.length > 0) {
+			selected = new BitSet();
+			for (int column : columns) {
+				selected.set(column);
+			}
+		}
+		FontMetricsProvider provider = getFontMetricsProvider();
+		DataFormatter formatter = new DataFormatter();
+		// Widths of the texts already measured by font, repeated texts are measured once
+		Map<FontMetrics, Map<String, Double>> textWidths = new HashMap<>();
+		Map<Integer, Double> widths = new HashMap<>();
+		for (Row row : sampling.select(sheet)) {
+			for (Cell cell : row) {
+				int column = cell.getColumnIndex();
+				if (selected != null && !selected.get(column)) {
+					continue;
+				}
+				int lastColumn = column;
+				if (mergedRegions != null) {
+					CellRangeAddress region = mergedRegions.find(row.getRowNum(), column);
+					if (region != null) {
+						boolean firstCell =
+								region.getFirstRow() == row.getRowNum()
+									&& region.getFirstColumn() == column;
+						if (!firstCell) {
+							continue;
+						}
+						lastColumn = region.getLastColumn();
+					}
+				}
+				String value = getCellText(cell, formatter);
+				if (StringUtils.isEmpty(value)) {
+					continue;
+				}
+				CellStyle style = cell.getCellStyle();
+				Font font = workbook.getFontAt(style.getFontIndex());
+				FontMetrics metrics = provider.getFontMetrics(FontFingerprint.of(font));
+				Map<String, Double> fontTextWidths =
+						textWidths.computeIfAbsent(metrics, key -> new HashMap<>());
+				double width = 0;
+				for (String line : StringUtils.split(value, "\n\r")) { //$NON-NLS-1$
+					Double lineWidth = fontTextWidths.get(line);
+					if (lineWidth == null) {
+						lineWidth = getStringWidth(line, metrics, measurement);
+						fontTextWidths.put(line, lineWidth);
+					}
+					width = Math.max(width, lineWidth);
+				}
+				// The width of a merged cell is spread evenly over the columns of the region
+				int columnSpan = lastColumn - column + 1;
+				double widthInChars =
+						width / metrics.getAverageCharWidth() / columnSpan + style.getIndention()
+							+ COLUMN_PADDING;
+				for (int spanned = column; spanned <= lastColumn; ++spanned) {
+					if (selected == null || selected.get(spanned)) {
+						widths.merge(spanned, widthInChars, Math::max);
+					}
+				}
+			}
+		}
+		widths.forEach((column, widthInChars) -> {
+			int width = (int) Math.ceil(widthInChars) * 256;
+			sheet.setColumnWidth(column, Math.min(width, MAX_COLUMN_WIDTH));
+		});
+	}
+
+	/** Text of the cell as displayed, or null for the blank and error cells */
+	private static String getCellText(Cell cell, DataFormatter formatter) {
+		int type = cell.getCellType();
+		if (type == Cell.CELL_TYPE_FORMULA) {
+			type = cell.getCachedFormulaResultType();
+		}
+		switch (type) {
+		case Cell.CELL_TYPE_STRING:
+			return cell.getRichStringCellValue().getString();
+		case Cell.CELL_TYPE_NUMERIC:
+			CellStyle style = cell.getCellStyle();
+			return formatter.formatRawCellContents(	cell.getNumericCellValue(),
+													style.getDataFormat(),
+													style.getDataFormatString());
+		case Cell.CELL_TYPE_BOOLEAN:
+			return cell.getBooleanCellValue() ? "TRUE" : "FALSE"; //$NON-NLS-1$ //$NON-NLS-2$
+		default:
+			return null;
+		}
+	}
+
+	private static double getStringWidth(	String string,
+											FontMetrics metrics,
+											TextMeasurement measurement) {
+		if (measurement != TextMeasurement.FAST) {
+			return metrics.getStringWidth(string);
+		}
+		double result = 0;
+		for (int i = 0; i < string.length(); ++i) {
+			result += metrics.getCharAdvance(string.charAt(i));
 		}
-		AttributedString str = new AttributedString(string);
-		copyAttributes(font, str, 0, string.length() - 1);
-		LineBreakMeasurer measurer =
-				new LineBreakMeasurer(str.getIterator(), new FontRenderContext(null, true, true));
+		return result;
+	}
+
+	@SuppressWarnings("unused")
+	private static final String TEST_STRING_V =
+			"LineBreakMeasurer is constructed with an iterator over styled text. The iterator's range should be a single paragraph in the text."; //$NON-NLS-1$
+
+	private static int getStringLinesCount(	String[] strings,
+											FontMetrics metrics,
+											float maxWidth,
+											TextMeasurement measurement) {
 		int result = 0;
-		while (measurer.nextLayout(maxWidth) != null) {
-			result++;
+		for (String string : strings) {
+			if (StringUtils.length(string) <= 1) {
+				result++;
+			} else if (measurement == TextMeasurement.FAST) {
+				result += metrics.getLinesCountFast(string, maxWidth);
+			} else {
+				result += metrics.getLinesCount(string, maxWidth);
+			}
 		}
 		return result;
 	}
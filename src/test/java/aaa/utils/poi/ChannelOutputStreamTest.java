@@ -0,0 +1,111 @@
+package aaa.utils.poi;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Random;
+
+public class ChannelOutputStreamTest {
+
+	/** Канал, записывающий за одно обращение не более заданного количества байт */
+	private static class PartialChannel implements WritableByteChannel {
+		private final WritableByteChannel channel;
+		private final int maxWrite;
+
+		public PartialChannel(WritableByteChannel channel, int maxWrite) {
+			this.channel = channel;
+			this.maxWrite = maxWrite;
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			ByteBuffer part = src.duplicate();
+			part.limit(Math.min(src.limit(), src.position() + maxWrite));
+			int result = channel.write(part);
+			src.position(src.position() + result);
+			return result;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return channel.isOpen();
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	/** Данные размером в несколько буферов записи */
+	private static byte[] createData() {
+		byte[] result = new byte[3 * ChannelOutputStream.BUFFER_SIZE + 1234];
+		new Random(42).nextBytes(result);
+		return result;
+	}
+
+	/** Запись данных частями разного размера, в том числе по одному байту и больше буфера */
+	private static void write(byte[] data, OutputStream outputStream) throws IOException {
+		Random random = new Random(42);
+		int offset = 0;
+		while (offset < data.length) {
+			if (random.nextInt(4) == 0) {
+				outputStream.write(data[offset++]);
+			} else {
+				int count = Math.min(	data.length - offset,
+										random.nextInt(2 * ChannelOutputStream.BUFFER_SIZE));
+				outputStream.write(data, offset, count);
+				offset += count;
+			}
+		}
+	}
+
+	@Test
+	public void writesAllData() throws IOException {
+		byte[] data = createData();
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		try (OutputStream outputStream = new ChannelOutputStream(Channels.newChannel(result))) {
+			write(data, outputStream);
+		}
+		assertArrayEquals(data, result.toByteArray());
+	}
+
+	@Test
+	public void writesAllDataToPartialChannel() throws IOException {
+		byte[] data = createData();
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		WritableByteChannel channel = new PartialChannel(Channels.newChannel(result), 1000);
+		try (OutputStream outputStream = new ChannelOutputStream(channel)) {
+			write(data, outputStream);
+			outputStream.flush();
+		}
+		assertArrayEquals(data, result.toByteArray());
+	}
+
+	/** Повторное закрытие ничего не делает, буфер возвращается в пул один раз */
+	@Test
+	public void repeatedCloseIsIgnored() throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		OutputStream outputStream = new ChannelOutputStream(Channels.newChannel(result));
+		outputStream.write(new byte[] { 1, 2, 3 });
+		outputStream.close();
+		outputStream.close();
+		assertArrayEquals(new byte[] { 1, 2, 3 }, result.toByteArray());
+	}
+
+	@Test(expected = IOException.class)
+	public void writeAfterCloseFails() throws IOException {
+		OutputStream outputStream =
+				new ChannelOutputStream(Channels.newChannel(new ByteArrayOutputStream()));
+		outputStream.close();
+		outputStream.write(1);
+	}
+
+}
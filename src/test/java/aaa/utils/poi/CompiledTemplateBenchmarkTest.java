@@ -0,0 +1,166 @@
+package aaa.utils.poi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assume.assumeTrue;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Сравнение заполнения документов подготовленным шаблоном ({@link CompiledTemplate#stamp(Map)})
+ * с заполнением разбором шаблона, {@link SSUtils#setNamedCellValue} и
+ * {@link SSUtils#flushWorkBook(Workbook)}. Содержимое документов обоими способами должно
+ * совпадать побайтно.
+ * <p>
+ * Замер времени выполняется только при заданном системном свойстве benchmark:
+ * {@code mvn test -Dtest=CompiledTemplateBenchmarkTest -Dbenchmark=true}, количество
+ * документов и имён шаблона задаются свойствами benchmark.documents и benchmark.names.
+ * Шаблон и значения не зависят от случайных чисел, поэтому замеры воспроизводимы
+ */
+public class CompiledTemplateBenchmarkTest {
+
+	private static final String SHEET_NAME = "Data"; //$NON-NLS-1$
+	private static final int COLUMN_COUNT = 6;
+	/** Количество документов, проверяемых на совпадение содержимого */
+	private static final int CHECKED_DOCUMENTS = 20;
+	/** Количество прогонов замера, первый из которых - прогрев */
+	private static final int ROUNDS = 4;
+
+	private static final int NAMES = Integer.getInteger("benchmark.names", 300); //$NON-NLS-1$
+
+	private static byte[] templateData;
+	private static CompiledTemplate template;
+
+	@BeforeClass
+	public static void createTemplate() throws IOException {
+		HSSFWorkbook workbook = new HSSFWorkbook();
+		Sheet sheet = workbook.createSheet(SHEET_NAME);
+		for (int i = 0; i < NAMES; ++i) {
+			Row row = sheet.createRow(i);
+			for (int j = 0; j < COLUMN_COUNT; ++j) {
+				row.createCell(j).setCellValue(i * j);
+			}
+			SSUtils.makeNamedCell(workbook, sheet, name(i), i, 1);
+		}
+		templateData = SSUtils.flushWorkBook(workbook);
+		template = CompiledTemplate.of(templateData);
+	}
+
+	private static String name(int index) {
+		return "F" + index; //$NON-NLS-1$
+	}
+
+	/** Значения документа: строки, числа и даты вперемешку */
+	private static Map<String, Object> values(int document) {
+		Map<String, Object> result = new LinkedHashMap<>();
+		for (int i = 0; i < NAMES; ++i) {
+			Object value;
+			switch (i % 3) {
+			case 0:
+				value = "s" + document + "_" + i; //$NON-NLS-1$ //$NON-NLS-2$
+				break;
+			case 1:
+				value = (double) document * NAMES + i;
+				break;
+			default:
+				value = new Date(86400000L * (document + i));
+				break;
+			}
+			result.put(name(i), value);
+		}
+		return result;
+	}
+
+	/** Заполнение документа разбором шаблона и поиском каждого имени */
+	private static byte[] fillByNames(Map<String, Object> values) throws IOException {
+		Workbook workbook = new HSSFWorkbook(new ByteArrayInputStream(templateData));
+		for (Map.Entry<String, Object> value : values.entrySet()) {
+			if (value.getValue() instanceof String) {
+				SSUtils.setNamedCellValue(workbook, value.getKey(), (String) value.getValue());
+			} else if (value.getValue() instanceof Double) {
+				SSUtils.setNamedCellValue(workbook, value.getKey(), (Double) value.getValue());
+			} else {
+				SSUtils.setNamedCellValue(workbook, value.getKey(), (Date) value.getValue(), null);
+			}
+		}
+		return SSUtils.flushWorkBook(workbook);
+	}
+
+	private static List<Map<String, Object>> documents(int count) {
+		List<Map<String, Object>> result = new ArrayList<>(count);
+		for (int i = 0; i < count; ++i) {
+			result.add(values(i));
+		}
+		return result;
+	}
+
+	@Test
+	public void stampIsSameAsFillByNames() throws IOException {
+		for (Map<String, Object> values : documents(CHECKED_DOCUMENTS)) {
+			assertArrayEquals(fillByNames(values), template.stamp(values));
+		}
+	}
+
+	@Test
+	public void stampAllIsSameAsFillByNames() throws IOException {
+		List<Map<String, Object>> documents = documents(CHECKED_DOCUMENTS);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Iterator<byte[]> stamps = template.stampAll(documents.iterator(), executor, 8);
+			for (Map<String, Object> values : documents) {
+				assertArrayEquals(fillByNames(values), stamps.next());
+			}
+			assertFalse(stamps.hasNext());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void benchmark() throws IOException {
+		assumeTrue(Boolean.getBoolean("benchmark")); //$NON-NLS-1$
+		List<Map<String, Object>> documents =
+				documents(Integer.getInteger("benchmark.documents", 500)); //$NON-NLS-1$
+		for (int round = 0; round < ROUNDS; ++round) {
+			System.gc();
+			long start = System.nanoTime();
+			for (Map<String, Object> values : documents) {
+				fillByNames(values);
+			}
+			long byNames = System.nanoTime() - start;
+			System.gc();
+			start = System.nanoTime();
+			for (Map<String, Object> values : documents) {
+				template.stamp(values);
+			}
+			long stamp = System.nanoTime() - start;
+			String label = round == 0 ? "warm-up" : "round " + round; //$NON-NLS-1$ //$NON-NLS-2$
+			System.out.println(String.format(	"%s %d documents, %d names: " //$NON-NLS-1$
+													+ "by names %.2f ms/document, " //$NON-NLS-1$
+													+ "stamp %.2f ms/document (x%.1f)", //$NON-NLS-1$
+												label,
+												documents.size(),
+												NAMES,
+												byNames / 1e6 / documents.size(),
+												stamp / 1e6 / documents.size(),
+												(double) byNames / stamp));
+		}
+	}
+
+}
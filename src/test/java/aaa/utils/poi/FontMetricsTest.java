@@ -0,0 +1,63 @@
+package aaa.utils.poi;
+
+import static org.junit.Assert.assertEquals;
+
+import aaa.utils.poi.FontMetricsProvider.FontMetrics;
+import org.junit.Test;
+
+public class FontMetricsTest {
+
+	/** Метрики моноширинного шрифта с шириной символа 1 */
+	private static final FontMetrics UNIT_METRICS = new FontMetrics() {
+
+		@Override
+		public double getStringWidth(String string) {
+			return string.length();
+		}
+
+		@Override
+		public float getCharAdvance(char c) {
+			return 1;
+		}
+
+		@Override
+		public int getLinesCount(String string, float maxWidth) {
+			return getLinesCountFast(string, maxWidth);
+		}
+	};
+
+	private static int linesCount(String string) {
+		return UNIT_METRICS.getLinesCountFast(string, 10);
+	}
+
+	@Test
+	public void shortTexts() {
+		assertEquals(1, linesCount("")); //$NON-NLS-1$
+		assertEquals(1, linesCount("hello you")); //$NON-NLS-1$
+		assertEquals(1, linesCount("0123456789")); //$NON-NLS-1$
+	}
+
+	@Test
+	public void wordsAreWrapped() {
+		assertEquals(2, linesCount("hello world")); //$NON-NLS-1$
+		assertEquals(2, linesCount("aaaa bbbb cccc")); //$NON-NLS-1$
+		assertEquals(3, linesCount("aaaa bbbb cccc dddd eeee")); //$NON-NLS-1$
+	}
+
+	@Test
+	public void trailingSpacesDoNotWrap() {
+		assertEquals(1, linesCount("hello          ")); //$NON-NLS-1$
+	}
+
+	@Test
+	public void longWordIsSplitBetweenCharacters() {
+		assertEquals(3, linesCount("abcdefghijklmnopqrstuvwxy")); //$NON-NLS-1$
+		assertEquals(3, linesCount("a abcdefghijkl")); //$NON-NLS-1$
+	}
+
+	@Test
+	public void averageCharWidth() {
+		assertEquals(1, UNIT_METRICS.getAverageCharWidth(), 0);
+	}
+
+}
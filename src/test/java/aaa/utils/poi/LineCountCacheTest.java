@@ -0,0 +1,131 @@
+package aaa.utils.poi;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.HSSFExtraTools.TextMeasurement;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LineCountCacheTest {
+
+	private static final String TEXT = "text"; //$NON-NLS-1$
+	private static final FontFingerprint FONT = font((short) 10);
+
+	private static FontFingerprint font(short fontHeightInPoints) {
+		return new FontFingerprint(	false,
+									false,
+									Font.BOLDWEIGHT_NORMAL,
+									fontHeightInPoints,
+									Font.COLOR_NORMAL,
+									"Arial", //$NON-NLS-1$
+									Font.SS_NONE,
+									Font.U_NONE);
+	}
+
+	/** Получение количества строк из кэша с подсчётом вычислений */
+	private static int getLinesCount(	LineCountCache cache,
+										String text,
+										FontFingerprint font,
+										float maxWidth,
+										TextMeasurement measurement,
+										AtomicInteger calculations) {
+		return cache.getLinesCount(text, font, maxWidth, measurement, () -> {
+			calculations.incrementAndGet();
+			return text.length();
+		});
+	}
+
+	@Test
+	public void repeatedTextIsCalculatedOnce() {
+		LineCountCache cache = new LineCountCache();
+		AtomicInteger calculations = new AtomicInteger();
+		for (int i = 0; i < 3; ++i) {
+			int result = getLinesCount(cache, TEXT, FONT, 10, TextMeasurement.EXACT, calculations);
+			assertEquals(TEXT.length(), result);
+		}
+		assertEquals(1, calculations.get());
+		assertEquals(2, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(2.0 / 3, cache.getHitRate(), 1e-9);
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void keyIncludesFontWidthAndMeasurement() {
+		LineCountCache cache = new LineCountCache();
+		AtomicInteger calculations = new AtomicInteger();
+		getLinesCount(cache, TEXT, FONT, 10, TextMeasurement.EXACT, calculations);
+		getLinesCount(cache, "other", FONT, 10, TextMeasurement.EXACT, calculations); //$NON-NLS-1$
+		getLinesCount(cache, TEXT, font((short) 12), 10, TextMeasurement.EXACT, calculations);
+		getLinesCount(cache, TEXT, FONT, 11, TextMeasurement.EXACT, calculations);
+		getLinesCount(cache, TEXT, FONT, 10, TextMeasurement.FAST, calculations);
+		assertEquals(5, calculations.get());
+		assertEquals(5, cache.size());
+	}
+
+	/** Ширина учитывается с точностью до 1/100 точки */
+	@Test
+	public void widthIsQuantized() {
+		LineCountCache cache = new LineCountCache();
+		AtomicInteger calculations = new AtomicInteger();
+		getLinesCount(cache, TEXT, FONT, 10f, TextMeasurement.EXACT, calculations);
+		getLinesCount(cache, TEXT, FONT, 10.001f, TextMeasurement.EXACT, calculations);
+		assertEquals(1, calculations.get());
+		getLinesCount(cache, TEXT, FONT, 10.01f, TextMeasurement.EXACT, calculations);
+		assertEquals(2, calculations.get());
+	}
+
+	@Test
+	public void leastRecentlyUsedTextIsEvicted() {
+		LineCountCache cache = new LineCountCache(2);
+		AtomicInteger calculations = new AtomicInteger();
+		getLinesCount(cache, "a", FONT, 10, TextMeasurement.EXACT, calculations); //$NON-NLS-1$
+		getLinesCount(cache, "b", FONT, 10, TextMeasurement.EXACT, calculations); //$NON-NLS-1$
+		getLinesCount(cache, "a", FONT, 10, TextMeasurement.EXACT, calculations); //$NON-NLS-1$
+		getLinesCount(cache, "c", FONT, 10, TextMeasurement.EXACT, calculations); //$NON-NLS-1$
+		assertEquals(2, cache.size());
+		assertEquals(3, calculations.get());
+		getLinesCount(cache, "a", FONT, 10, TextMeasurement.EXACT, calculations); //$NON-NLS-1$
+		assertEquals(3, calculations.get());
+		getLinesCount(cache, "b", FONT, 10, TextMeasurement.EXACT, calculations); //$NON-NLS-1$
+		assertEquals(4, calculations.get());
+	}
+
+	@Test
+	public void autoSizeRowsWithCacheIsSameAsWithout() {
+		Workbook workbook = new HSSFWorkbook();
+		Sheet cached = workbook.createSheet();
+		Sheet uncached = workbook.createSheet();
+		String[] texts = { "short", //$NON-NLS-1$
+							"a somewhat longer text that wraps in a narrow column" }; //$NON-NLS-1$
+		for (Sheet sheet : new Sheet[] { cached, uncached }) {
+			sheet.setColumnWidth(0, 10 * 256);
+			for (int i = 0; i < 20; ++i) {
+				sheet.createRow(i).createCell(0).setCellValue(texts[i % texts.length]);
+			}
+		}
+		LineCountCache cache = new LineCountCache();
+		SSUtils.autoSizeRows(cached, workbook, TextMeasurement.FAST, cache);
+		SSUtils.autoSizeRows(uncached, workbook, TextMeasurement.FAST, null);
+		assertEquals(getRowHeights(uncached), getRowHeights(cached));
+		assertEquals(texts.length, cache.getMisses());
+		assertEquals(20 - texts.length, cache.getHits());
+	}
+
+	private static List<Float> getRowHeights(Sheet sheet) {
+		List<Float> result = new ArrayList<>();
+		for (Row row : sheet) {
+			result.add(row.getHeightInPoints());
+		}
+		return result;
+	}
+
+}
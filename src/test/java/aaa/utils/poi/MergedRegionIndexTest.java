@@ -0,0 +1,85 @@
+package aaa.utils.poi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class MergedRegionIndexTest {
+
+	/** Поиск перебором всех объединённых ячеек листа */
+	private static CellRangeAddress findLinear(Sheet sheet, int rowIndex, int columnIndex) {
+		for (int i = 0; i < sheet.getNumMergedRegions(); ++i) {
+			CellRangeAddress region = sheet.getMergedRegion(i);
+			if (region.isInRange(rowIndex, columnIndex)) {
+				return region;
+			}
+		}
+		return null;
+	}
+
+	private static void assertSameAsLinear(Sheet sheet, int rowCount, int columnCount) {
+		MergedRegionIndex index = MergedRegionIndex.of(sheet);
+		for (int row = -1; row <= rowCount; ++row) {
+			for (int column = -1; column <= columnCount; ++column) {
+				assertEquals(	row + ":" + column, //$NON-NLS-1$
+								format(findLinear(sheet, row, column)),
+								format(index.find(row, column)));
+			}
+		}
+	}
+
+	private static String format(CellRangeAddress region) {
+		return region == null ? null : region.formatAsString();
+	}
+
+	@Test
+	public void emptySheet() {
+		MergedRegionIndex index = MergedRegionIndex.of(new HSSFWorkbook().createSheet());
+		assertNull(index.find(0, 0));
+		assertNull(index.find(-1, -1));
+	}
+
+	@Test
+	public void disjointRegions() {
+		Sheet sheet = new HSSFWorkbook().createSheet();
+		sheet.addMergedRegion(new CellRangeAddress(0, 0, 0, 3));
+		sheet.addMergedRegion(new CellRangeAddress(1, 4, 1, 1));
+		sheet.addMergedRegion(new CellRangeAddress(2, 3, 2, 5));
+		sheet.addMergedRegion(new CellRangeAddress(6, 6, 0, 0));
+		assertSameAsLinear(sheet, 8, 8);
+	}
+
+	/** При пересечении областей находится первая из них в порядке листа */
+	@Test
+	public void overlappingRegions() {
+		Sheet sheet = new HSSFWorkbook().createSheet();
+		sheet.addMergedRegion(new CellRangeAddress(2, 5, 2, 5));
+		sheet.addMergedRegion(new CellRangeAddress(0, 9, 0, 9));
+		sheet.addMergedRegion(new CellRangeAddress(3, 3, 0, 3));
+		assertSameAsLinear(sheet, 10, 10);
+	}
+
+	@Test
+	public void randomRegions() {
+		Random random = new Random(42);
+		for (int attempt = 0; attempt < 20; ++attempt) {
+			Sheet sheet = new HSSFWorkbook().createSheet();
+			for (int i = 0; i < 30; ++i) {
+				int firstRow = random.nextInt(40);
+				int firstColumn = random.nextInt(20);
+				sheet.addMergedRegion(new CellRangeAddress(	firstRow,
+															firstRow + random.nextInt(5),
+															firstColumn,
+															firstColumn + random.nextInt(5)));
+			}
+			assertSameAsLinear(sheet, 45, 25);
+		}
+	}
+
+}
@@ -0,0 +1,83 @@
+package aaa.utils.poi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class SSUtilsFlushTest {
+
+	private static final int ROW_COUNT = 3000;
+	/** Количество строк книги XLSX, содержимое которой сжимается */
+	private static final int XSSF_ROW_COUNT = 10000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** Книга, содержимое которой занимает несколько буферов записи в канал */
+	private static Workbook createWorkbook(WorkbookFormat format, int rowCount) {
+		Workbook workbook = format.create();
+		Sheet sheet = workbook.createSheet();
+		for (int i = 0; i < rowCount; ++i) {
+			Row row = sheet.createRow(i);
+			row.createCell(0).setCellValue("Строка " + i); //$NON-NLS-1$
+			row.createCell(1).setCellValue(i);
+		}
+		return workbook;
+	}
+
+	@Test
+	public void channelAndFileContentIsSameAsArray() throws IOException {
+		Workbook workbook = createWorkbook(WorkbookFormat.HSSF, ROW_COUNT);
+		byte[] expected = SSUtils.flushWorkBook(workbook);
+		assertTrue(expected.length > ChannelOutputStream.BUFFER_SIZE);
+
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		SSUtils.flushWorkBook(workbook, stream);
+		assertArrayEquals(expected, stream.toByteArray());
+
+		ByteArrayOutputStream channelStream = new ByteArrayOutputStream();
+		SSUtils.flushWorkBook(workbook, Channels.newChannel(channelStream));
+		assertArrayEquals(expected, channelStream.toByteArray());
+
+		Path path = folder.newFile().toPath();
+		// Существующее более длинное содержимое файла заменяется
+		Files.write(path, new byte[expected.length * 2]);
+		SSUtils.flushWorkBook(workbook, path);
+		assertArrayEquals(expected, Files.readAllBytes(path));
+	}
+
+	/**
+	 * Содержимое книги XLSX включает время записи, поэтому записанный файл проверяется
+	 * чтением книги
+	 */
+	@Test
+	public void xssfFileIsReadable() throws IOException {
+		Workbook workbook = createWorkbook(WorkbookFormat.XSSF, XSSF_ROW_COUNT);
+		Path path = folder.newFile().toPath();
+		SSUtils.flushWorkBook(workbook, path);
+		assertTrue(Files.size(path) > ChannelOutputStream.BUFFER_SIZE);
+		try (Workbook result = new XSSFWorkbook(Files.newInputStream(path))) {
+			Sheet sheet = result.getSheetAt(0);
+			assertEquals(XSSF_ROW_COUNT, sheet.getPhysicalNumberOfRows());
+			int lastRow = XSSF_ROW_COUNT - 1;
+			Row row = sheet.getRow(lastRow);
+			assertEquals("Строка " + lastRow, row.getCell(0).getStringCellValue()); //$NON-NLS-1$
+			assertEquals(lastRow, row.getCell(1).getNumericCellValue(), 0);
+		}
+	}
+
+}
@@ -0,0 +1,231 @@
+package aaa.utils.poi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class SSUtilsMergeTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Исходная книга с несколькими стилями, в том числе со шрифтом цвета по-умолчанию.
+	 * Порядок создания стилей зависит от номера книги, поэтому таблицы стилей книг различаются
+	 */
+	private static byte[] createSource(int index) throws IOException {
+		Workbook workbook = new HSSFWorkbook();
+		Sheet sheet = workbook.createSheet();
+		CellStyle wrapStyle = null;
+		if (index % 2 == 1) {
+			wrapStyle = workbook.createCellStyle();
+		}
+		Font bold = workbook.createFont();
+		bold.setBold(true);
+		bold.setFontHeightInPoints((short) (10 + index % 3));
+		CellStyle boldStyle = workbook.createCellStyle();
+		boldStyle.setFont(bold);
+		if (wrapStyle == null) {
+			wrapStyle = workbook.createCellStyle();
+		}
+		wrapStyle.setWrapText(true);
+		for (int i = 0; i < 5; ++i) {
+			Row row = sheet.createRow(i);
+			row.createCell(0).setCellValue(index * 10 + i);
+			row.getCell(0).setCellStyle(boldStyle);
+			row.createCell(1).setCellValue(i);
+			row.getCell(1).setCellStyle(wrapStyle);
+		}
+		return SSUtils.flushWorkBook(workbook);
+	}
+
+	private static List<byte[]> createSources(int count) throws IOException {
+		List<byte[]> result = new ArrayList<>();
+		for (int i = 0; i < count; ++i) {
+			result.add(createSource(i));
+		}
+		return result;
+	}
+
+	private static Workbook merge(List<byte[]> sources, WorkbookFormat format) throws IOException {
+		return SSUtils.collectToSingleWorkBook(	sources.iterator(),
+												3,
+												2,
+												false,
+												300d,
+												9000d,
+												null,
+												format);
+	}
+
+	/**
+	 * Одинаковые стили исходных книг создаются в целевой книге один раз в любом формате:
+	 * стили и шрифты, добавленные при соединении, отличаются друг от друга и от имевшихся
+	 * в новой книге
+	 */
+	private static void assertStylesNotDuplicated(WorkbookFormat format) throws IOException {
+		Workbook empty = format.create();
+		Workbook target = merge(createSources(30), format);
+		Set<StyleFingerprint> styles = new HashSet<>();
+		// Индексы шрифтов добавленных стилей (индексы шрифтов книги XLS идут с пропуском)
+		Set<Short> fontIndexes = new HashSet<>();
+		for (short i = 0; i < target.getNumCellStyles(); ++i) {
+			CellStyle style = target.getCellStyleAt(i);
+			StyleFingerprint fingerprint = StyleFingerprint.of(target, style);
+			if (!styles.add(fingerprint) && i >= empty.getNumCellStyles()) {
+				fail("Duplicate style " + fingerprint); //$NON-NLS-1$
+			}
+			if (i >= empty.getNumCellStyles()) {
+				fontIndexes.add(style.getFontIndex());
+			}
+		}
+		Set<FontFingerprint> fonts = new HashSet<>();
+		for (short i : fontIndexes) {
+			FontFingerprint font = FontFingerprint.of(target.getFontAt(i));
+			if (!fonts.add(font)) {
+				fail("Duplicate font " + font); //$NON-NLS-1$
+			}
+		}
+		if (target instanceof SXSSFWorkbook) {
+			((SXSSFWorkbook) empty).dispose();
+			((SXSSFWorkbook) target).dispose();
+		}
+	}
+
+	@Test
+	public void stylesAreNotDuplicatedInHssf() throws IOException {
+		assertStylesNotDuplicated(WorkbookFormat.HSSF);
+	}
+
+	@Test
+	public void stylesAreNotDuplicatedInXssf() throws IOException {
+		assertStylesNotDuplicated(WorkbookFormat.XSSF);
+	}
+
+	@Test
+	public void stylesAreNotDuplicatedInSxssf() throws IOException {
+		assertStylesNotDuplicated(WorkbookFormat.SXSSF);
+	}
+
+	/** Повторное копирование стиля возвращает созданную при первом копировании копию */
+	@Test
+	public void repeatedStyleCopyReusesStyle() {
+		Workbook source = new HSSFWorkbook();
+		Font bold = source.createFont();
+		bold.setBold(true);
+		CellStyle style = source.createCellStyle();
+		style.setFont(bold);
+		for (WorkbookFormat format : WorkbookFormat.values()) {
+			Workbook target = format.create();
+			CellStyle copy = SSUtils.copyStyleTo(source, style, target);
+			int styleCount = target.getNumCellStyles();
+			int fontCount = target.getNumberOfFonts();
+			for (int i = 0; i < 100; ++i) {
+				CellStyle repeatedCopy = SSUtils.copyStyleTo(source, style, target);
+				assertEquals(copy.getIndex(), repeatedCopy.getIndex());
+			}
+			assertEquals(format.name(), styleCount, target.getNumCellStyles());
+			assertEquals(format.name(), fontCount, target.getNumberOfFonts());
+		}
+	}
+
+	/** Книги, записанные в файлы, для чтения через {@link WorkbookSource#of(Path)} */
+	private List<WorkbookSource> writeSources(List<byte[]> sources) throws IOException {
+		List<WorkbookSource> result = new ArrayList<>();
+		for (byte[] source : sources) {
+			Path path = folder.newFile().toPath();
+			Files.write(path, source);
+			result.add(WorkbookSource.of(path));
+		}
+		return result;
+	}
+
+	/** Соединение книг из файлов даёт тот же документ, что и соединение их содержимого */
+	@Test
+	public void pathMergeEqualsDataMerge() throws IOException {
+		List<byte[]> sources = createSources(10);
+		byte[] expected = SSUtils.collectToSingle(sources.iterator(), 3, 2, false, 300d, 9000d);
+		byte[] actual = SSUtils.collectToSingle(writeSources(sources), 3, 2, false, 300d, 9000d);
+		assertArrayEquals(expected, actual);
+	}
+
+	/** Потоковое соединение книг из файлов совпадает с потоковым соединением их содержимого */
+	@Test
+	public void streamingPathMergeEqualsDataMerge() throws IOException {
+		List<byte[]> sources = createSources(10);
+		List<WorkbookSource> files = writeSources(sources);
+		for (boolean collectStylesFirst : new boolean[] { true, false }) {
+			Workbook expected = SSUtils.collectToSingleWorkBookStreaming(	sources,
+																			3,
+																			2,
+																			false,
+																			300d,
+																			9000d,
+																			collectStylesFirst,
+																			null,
+																			WorkbookFormat.HSSF);
+			Workbook actual = SSUtils.collectSourcesToSingleWorkBookStreaming(	files,
+																				3,
+																				2,
+																				false,
+																				300d,
+																				9000d,
+																				collectStylesFirst,
+																				null,
+																				WorkbookFormat.HSSF);
+			assertArrayEquals(SSUtils.flushWorkBook(expected), SSUtils.flushWorkBook(actual));
+		}
+	}
+
+	/** Текст и вычисленные значения формул исходных книг переносятся в целевую книгу */
+	@Test
+	public void textAndFormulaValuesAreMerged() throws IOException {
+		List<byte[]> sources = new ArrayList<>();
+		Set<String> expectedTexts = new HashSet<>();
+		for (int i = 0; i < 3; ++i) {
+			Workbook workbook = new HSSFWorkbook();
+			Row row = workbook.createSheet().createRow(0);
+			String text = "Текст " + i; //$NON-NLS-1$
+			expectedTexts.add(text);
+			row.createCell(0).setCellValue(text);
+			row.createCell(1).setCellFormula("LEN(A1)"); //$NON-NLS-1$
+			workbook.getCreationHelper().createFormulaEvaluator().evaluateAll();
+			sources.add(SSUtils.flushWorkBook(workbook));
+		}
+		Set<String> texts = new HashSet<>();
+		int formulaCount = 0;
+		for (Row row : merge(sources, WorkbookFormat.HSSF).getSheetAt(0)) {
+			for (Cell cell : row) {
+				if (cell.getCellType() == Cell.CELL_TYPE_STRING) {
+					texts.add(cell.getStringCellValue());
+				} else {
+					assertEquals(7, cell.getNumericCellValue(), 0);
+					formulaCount++;
+				}
+			}
+		}
+		assertEquals(expectedTexts, texts);
+		assertEquals(sources.size(), formulaCount);
+	}
+
+}
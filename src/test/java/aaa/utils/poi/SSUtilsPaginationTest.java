@@ -0,0 +1,107 @@
+package aaa.utils.poi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class SSUtilsPaginationTest {
+
+	private static final int ROW_COUNT = 12;
+	private static final float ROW_HEIGHT = 20;
+	/** Высота страницы, на которую умещается ровно пять строк */
+	private static final double PAGE_HEIGHT = 5 * ROW_HEIGHT;
+
+	private Sheet sheet;
+
+	@Before
+	public void createSheet() {
+		sheet = new HSSFWorkbook().createSheet();
+		for (int i = 0; i < ROW_COUNT; ++i) {
+			sheet.createRow(i).setHeightInPoints(ROW_HEIGHT);
+			sheet.getRow(i).createCell(0).setCellValue(i);
+		}
+	}
+
+	private int[] getRowBreaks() {
+		int[] result = sheet.getRowBreaks();
+		Arrays.sort(result);
+		return result;
+	}
+
+	@Test
+	public void uniformRows() {
+		int[] breaks = SSUtils.paginate(sheet, PAGE_HEIGHT);
+		assertArrayEquals(new int[] { 4, 9 }, breaks);
+		assertArrayEquals(breaks, getRowBreaks());
+	}
+
+	@Test
+	public void singlePage() {
+		assertArrayEquals(new int[0], SSUtils.paginate(sheet, ROW_COUNT * (double) ROW_HEIGHT));
+		assertArrayEquals(new int[0], getRowBreaks());
+	}
+
+	@Test
+	public void emptySheet() {
+		Sheet emptySheet = sheet.getWorkbook().createSheet();
+		assertArrayEquals(new int[0], SSUtils.paginate(emptySheet, PAGE_HEIGHT));
+	}
+
+	@Test
+	public void breakIsNotPlacedInsideMergedRegion() {
+		sheet.addMergedRegion(new CellRangeAddress(3, 6, 0, 1));
+		assertArrayEquals(new int[] { 2, 7 }, SSUtils.paginate(sheet, PAGE_HEIGHT));
+	}
+
+	@Test
+	public void singleRowRegionDoesNotPreventBreak() {
+		sheet.addMergedRegion(new CellRangeAddress(4, 4, 0, 1));
+		assertArrayEquals(new int[] { 4, 9 }, SSUtils.paginate(sheet, PAGE_HEIGHT));
+	}
+
+	@Test
+	public void rowTallerThanPageTakesWholePage() {
+		sheet.getRow(5).setHeightInPoints(2 * (float) PAGE_HEIGHT);
+		assertArrayEquals(new int[] { 4, 5, 10 }, SSUtils.paginate(sheet, PAGE_HEIGHT));
+	}
+
+	@Test
+	public void repeatingRowsReducePageHeight() {
+		PaginationOptions options =
+				PaginationOptions.builder().repeatingRowsFirst(0).repeatingRowsLast(0).build();
+		assertArrayEquals(new int[] { 4, 8 }, SSUtils.paginate(sheet, PAGE_HEIGHT, options));
+		assertEquals("1:1", sheet.getRepeatingRows().formatAsString()); //$NON-NLS-1$
+	}
+
+	@Test
+	public void existingBreaksAreRemoved() {
+		sheet.setRowBreak(1);
+		assertArrayEquals(new int[] { 4, 9 }, SSUtils.paginate(sheet, PAGE_HEIGHT));
+		assertArrayEquals(new int[] { 4, 9 }, getRowBreaks());
+	}
+
+	@Test
+	public void existingBreaksAreKept() {
+		sheet.setRowBreak(1);
+		PaginationOptions options = PaginationOptions.builder().keepExistingBreaks(true).build();
+		assertArrayEquals(new int[] { 1, 6 }, SSUtils.paginate(sheet, PAGE_HEIGHT, options));
+		assertArrayEquals(new int[] { 1, 6 }, getRowBreaks());
+	}
+
+	@Test
+	public void defaultPageHeight() {
+		int rowsPerPage = (int) (SSUtils.MAX_PAGE_HEIGHT_IN_POINTS / ROW_HEIGHT);
+		for (int i = ROW_COUNT; i < 2 * rowsPerPage; ++i) {
+			sheet.createRow(i).setHeightInPoints(ROW_HEIGHT);
+		}
+		assertArrayEquals(new int[] { rowsPerPage - 1 }, SSUtils.paginate(sheet, null));
+	}
+
+}
@@ -0,0 +1,88 @@
+package aaa.utils.poi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.Test;
+
+import java.util.List;
+
+public class SSUtilsSplitTest {
+
+	private static final String TEXT = "Текст "; //$NON-NLS-1$
+
+	/** Книга из двух страниц, на каждой из которых ячейки всех типов */
+	private static Workbook createWorkbook() {
+		Workbook workbook = new HSSFWorkbook();
+		Sheet sheet = workbook.createSheet();
+		for (int page = 0; page < 2; ++page) {
+			Row row = sheet.createRow(page * 2);
+			// Номер строки в ссылках формул
+			int rowNumber = page * 2 + 1;
+			row.createCell(0).setCellValue(TEXT + page);
+			row.createCell(1).setCellValue(page);
+			row.createCell(2).setCellFormula("B" + rowNumber + "+1"); //$NON-NLS-1$ //$NON-NLS-2$
+			row.createCell(3).setCellFormula("A" + rowNumber + "&\"!\""); //$NON-NLS-1$ //$NON-NLS-2$
+			row.createCell(4).setCellValue(true);
+			row.createCell(5).setCellErrorValue(FormulaError.DIV0.getCode());
+			sheet.createRow(page * 2 + 1).createCell(0);
+			sheet.setRowBreak(page * 2 + 1);
+		}
+		workbook.getCreationHelper().createFormulaEvaluator().evaluateAll();
+		return workbook;
+	}
+
+	/** Значения ячеек страниц, для формул - вычисленные значения */
+	private static void assertPages(List<Workbook> pages) {
+		assertEquals(2, pages.size());
+		for (int page = 0; page < pages.size(); ++page) {
+			Row row = pages.get(page).getSheetAt(0).getRow(0);
+			assertEquals(TEXT + page, row.getCell(0).getStringCellValue());
+			assertEquals(page, row.getCell(1).getNumericCellValue(), 0);
+			assertEquals(Cell.CELL_TYPE_NUMERIC, row.getCell(2).getCellType());
+			assertEquals(page + 1, row.getCell(2).getNumericCellValue(), 0);
+			assertEquals(TEXT + page + '!', row.getCell(3).getStringCellValue());
+			assertEquals(true, row.getCell(4).getBooleanCellValue());
+			assertEquals(FormulaError.DIV0.getCode(), row.getCell(5).getErrorCellValue());
+		}
+	}
+
+	@Test
+	public void cellValuesOfAllTypes() {
+		assertPages(SSUtils.splitByPages(createWorkbook()));
+	}
+
+	@Test
+	public void cellValuesOfAllTypesInParallel() {
+		assertPages(SSUtils.splitByPagesParallel(createWorkbook()));
+	}
+
+	/** Разрывы страниц листа XLS после строк с индексами больше 32767 учитываются */
+	@Test
+	public void rowBreaksAboveShortRange() {
+		Workbook workbook = new HSSFWorkbook();
+		Sheet sheet = workbook.createSheet();
+		int[] rows = { 0, 20000, 39000 };
+		for (int row : rows) {
+			sheet.createRow(row).createCell(0).setCellValue(row);
+		}
+		sheet.setRowBreak(35000);
+		sheet.setRowBreak(10000);
+		assertArrayEquals(new int[] { 10000, 35000 }, SSUtils.getRowBreaks(sheet));
+		List<Workbook> pages = SSUtils.splitByPages(workbook);
+		assertEquals(rows.length, pages.size());
+		for (int i = 0; i < rows.length; ++i) {
+			Sheet pageSheet = pages.get(i).getSheetAt(0);
+			assertEquals(1, pageSheet.getPhysicalNumberOfRows());
+			Row row = pageSheet.getRow(pageSheet.getFirstRowNum());
+			assertEquals(rows[i], row.getCell(0).getNumericCellValue(), 0);
+		}
+	}
+
+}
@@ -0,0 +1,87 @@
+package aaa.utils.poi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TemplateCacheTest {
+
+	/** Книга шаблона, таблица стилей которой зависит от номера шаблона */
+	private static byte[] createTemplate(int index) throws IOException {
+		Workbook workbook = new HSSFWorkbook();
+		Font font = workbook.createFont();
+		font.setFontHeightInPoints((short) (10 + index));
+		CellStyle style = workbook.createCellStyle();
+		style.setFont(font);
+		Row row = workbook.createSheet().createRow(0);
+		row.createCell(0).setCellValue(index);
+		row.getCell(0).setCellStyle(style);
+		return SSUtils.flushWorkBook(workbook);
+	}
+
+	@Test
+	public void hitsAndMisses() throws IOException {
+		TemplateCache cache = new TemplateCache();
+		byte[] template = createTemplate(0);
+		StyleTableFingerprint styles = cache.getStyleTable(template);
+		assertEquals(0, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertSame(styles, cache.getStyleTable(template));
+		// Книга с тем же содержимым в другом массиве находится в кэше
+		assertSame(styles, cache.getStyleTable(template.clone()));
+		assertEquals(2, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		cache.getStyleTable(createTemplate(1));
+		assertEquals(2, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		assertEquals(2, cache.size());
+		assertEquals(0.5, cache.getHitRate(), 0);
+	}
+
+	/** При переполнении вытесняется книга, к которой дольше всего не было обращений */
+	@Test
+	public void leastRecentlyUsedIsEvicted() throws IOException {
+		TemplateCache cache = new TemplateCache(2);
+		byte[] first = createTemplate(0);
+		byte[] second = createTemplate(1);
+		cache.getStyleTable(first);
+		cache.getStyleTable(second);
+		cache.getStyleTable(first);
+		cache.getStyleTable(createTemplate(2));
+		assertEquals(2, cache.size());
+		long misses = cache.getMisses();
+		cache.getStyleTable(first);
+		assertEquals(misses, cache.getMisses());
+		cache.getStyleTable(second);
+		assertEquals(misses + 1, cache.getMisses());
+	}
+
+	/** Соединение книг через кэш даёт тот же документ, что и соединение без кэша */
+	@Test
+	public void mergeIsSameAsWithoutCache() throws IOException {
+		List<byte[]> templates = new ArrayList<>();
+		for (int i = 0; i < 10; ++i) {
+			templates.add(createTemplate(i % 3));
+		}
+		byte[] expected = SSUtils.collectToSingle(templates.iterator(), 3, 2, false, 300d, 9000d);
+		TemplateCache cache = new TemplateCache();
+		for (int attempt = 0; attempt < 2; ++attempt) {
+			byte[] actual =
+					SSUtils.collectToSingle(cache.sources(templates), 3, 2, false, 300d, 9000d);
+			assertArrayEquals(expected, actual);
+		}
+		assertEquals(3, cache.size());
+	}
+
+}
@@ -0,0 +1,136 @@
+package aaa.utils.poi;
+
+import static org.junit.Assert.assertEquals;
+
+import aaa.utils.poi.FontMetricsProvider.FontMetrics;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.util.IOUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.awt.font.FontRenderContext;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+public class TrueTypeFontMetricsProviderTest {
+
+	private static final String FONT_RESOURCE = "DejaVuSerif.ttf"; //$NON-NLS-1$
+	private static final String FONT_FAMILY = "DejaVu Serif"; //$NON-NLS-1$
+	private static final short FONT_SIZE = 11;
+	private static final String TEXT =
+			"The quick brown fox jumps over the lazy dog 0123456789 Съешь ещё булок"; //$NON-NLS-1$
+	private static final double DELTA = 1e-3;
+
+	private static byte[] fontData;
+	private static java.awt.Font awtFont;
+
+	@BeforeClass
+	public static void loadFont() throws Exception {
+		try (InputStream stream =
+				TrueTypeFontMetricsProviderTest.class.getResourceAsStream(FONT_RESOURCE)) {
+			fontData = IOUtils.toByteArray(stream);
+		}
+		awtFont =
+				java.awt.Font
+						.createFont(java.awt.Font.TRUETYPE_FONT, new ByteArrayInputStream(fontData))
+						.deriveFont((float) FONT_SIZE);
+	}
+
+	private static FontFingerprint font(String name) {
+		return new FontFingerprint(	false,
+									false,
+									Font.BOLDWEIGHT_NORMAL,
+									FONT_SIZE,
+									Font.COLOR_NORMAL,
+									name,
+									Font.SS_NONE,
+									Font.U_NONE);
+	}
+
+	/** Ширина символа по AWT (без хинтинга, с дробными метриками) */
+	private static double awtAdvance(char c) {
+		return awtFont
+				.getStringBounds(String.valueOf(c), new FontRenderContext(null, true, true))
+				.getWidth();
+	}
+
+	/**
+	 * Коллекция шрифтов (.ttc) из одного шрифта: заголовок коллекции добавляется перед
+	 * каталогом таблиц, смещения таблиц сдвигаются на размер заголовка
+	 */
+	private static byte[] toCollection(byte[] font) {
+		int headerSize = 16;
+		ByteBuffer result = ByteBuffer.allocate(headerSize + font.length);
+		result.putInt(0x74746366); // "ttcf"
+		result.putInt(0x00010000);
+		result.putInt(1);
+		result.putInt(headerSize);
+		result.put(font);
+		int tableCount = result.getShort(headerSize + 4) & 0xFFFF;
+		for (int i = 0; i < tableCount; ++i) {
+			int offset = headerSize + 12 + 16 * i + 8;
+			result.putInt(offset, result.getInt(offset) + headerSize);
+		}
+		return result.array();
+	}
+
+	private static void assertSameMetrics(FontMetrics expected, FontMetrics actual) {
+		for (char c : TEXT.toCharArray()) {
+			assertEquals(	String.valueOf(c),
+							expected.getCharAdvance(c),
+							actual.getCharAdvance(c),
+							0);
+		}
+		assertEquals(expected.getStringWidth(TEXT), actual.getStringWidth(TEXT), 0);
+	}
+
+	@Test
+	public void advancesMatchAwt() {
+		TrueTypeFontMetricsProvider provider = new TrueTypeFontMetricsProvider().register(fontData);
+		FontMetrics metrics = provider.getFontMetrics(font(FONT_FAMILY));
+		double expectedWidth = 0;
+		for (char c : TEXT.toCharArray()) {
+			double expected = awtAdvance(c);
+			assertEquals(String.valueOf(c), expected, metrics.getCharAdvance(c), DELTA);
+			expectedWidth += expected;
+		}
+		assertEquals(expectedWidth, metrics.getStringWidth(TEXT), DELTA * TEXT.length());
+	}
+
+	@Test
+	public void familyNameIsCaseInsensitive() {
+		TrueTypeFontMetricsProvider provider = new TrueTypeFontMetricsProvider().register(fontData);
+		assertSameMetrics(	provider.getFontMetrics(font(FONT_FAMILY)),
+							provider.getFontMetrics(font(FONT_FAMILY.toUpperCase())));
+	}
+
+	@Test
+	public void collectionIsRead() throws IOException {
+		TrueTypeFontMetricsProvider single = new TrueTypeFontMetricsProvider().register(fontData);
+		TrueTypeFontMetricsProvider collection =
+				new TrueTypeFontMetricsProvider()
+						.register(new ByteArrayInputStream(toCollection(fontData)));
+		assertSameMetrics(	single.getFontMetrics(font(FONT_FAMILY)),
+							collection.getFontMetrics(font(FONT_FAMILY)));
+	}
+
+	@Test
+	public void unregisteredFamilyFallsBackToDefault() {
+		TrueTypeFontMetricsProvider provider = new TrueTypeFontMetricsProvider().register(fontData);
+		assertSameMetrics(	provider.getFontMetrics(font(FONT_FAMILY)),
+							provider.getFontMetrics(font("Unregistered Family"))); //$NON-NLS-1$
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void noRegisteredFonts() {
+		new TrueTypeFontMetricsProvider().getFontMetrics(font(FONT_FAMILY));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void notAFont() {
+		new TrueTypeFontMetricsProvider().register(new byte[64]);
+	}
+
+}
@@ -0,0 +1,183 @@
+package aaa.utils.poi;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class WorkbookFormatTest {
+
+	private static final String CELL_NAME = "Value"; //$NON-NLS-1$
+
+	/** Исходная книга XLS: столбец чисел со стилем с переносом текста */
+	private static byte[] createSource(int index) throws IOException {
+		Workbook workbook = new HSSFWorkbook();
+		Sheet sheet = workbook.createSheet();
+		CellStyle style = workbook.createCellStyle();
+		style.setWrapText(true);
+		for (int i = 0; i < 3; ++i) {
+			Row row = sheet.createRow(i);
+			row.createCell(0).setCellValue(index * 10 + i);
+			row.getCell(0).setCellStyle(style);
+		}
+		return SSUtils.flushWorkBook(workbook);
+	}
+
+	private static List<byte[]> createSources(int count) throws IOException {
+		List<byte[]> result = new ArrayList<>();
+		for (int i = 0; i < count; ++i) {
+			result.add(createSource(i));
+		}
+		return result;
+	}
+
+	/**
+	 * Сохранение и повторное чтение книги. Потоковая книга читается как
+	 * {@link WorkbookFormat#XSSF}, так как строки прочитанной потоковой книги недоступны
+	 * через её листы
+	 */
+	private static Workbook reread(Workbook workbook) throws IOException {
+		WorkbookFormat format = WorkbookFormat.of(workbook);
+		byte[] data = SSUtils.flushWorkBook(workbook);
+		if (format == WorkbookFormat.SXSSF) {
+			((SXSSFWorkbook) workbook).dispose();
+			format = WorkbookFormat.XSSF;
+		}
+		return format.read(new ByteArrayInputStream(data));
+	}
+
+	/** Числовые значения первого столбца листа */
+	private static List<Double> getValues(Workbook workbook) {
+		List<Double> result = new ArrayList<>();
+		for (Row row : workbook.getSheetAt(0)) {
+			Cell cell = row.getCell(0);
+			if (cell != null && cell.getCellType() == Cell.CELL_TYPE_NUMERIC) {
+				result.add(cell.getNumericCellValue());
+			}
+		}
+		return result;
+	}
+
+	@Test
+	public void formatOfCreatedWorkbook() throws IOException {
+		for (WorkbookFormat format : WorkbookFormat.values()) {
+			Workbook workbook = format.create();
+			assertEquals(format, WorkbookFormat.of(workbook));
+			workbook.createSheet();
+			WorkbookFormat expected = format == WorkbookFormat.SXSSF ? WorkbookFormat.XSSF : format;
+			assertEquals(expected, WorkbookFormat.of(reread(workbook)));
+		}
+	}
+
+	/** Текст null записывается как пустая строка в книгу любого формата */
+	@Test
+	public void nullTextIsEmptyStringInEveryFormat() throws IOException {
+		for (WorkbookFormat format : WorkbookFormat.values()) {
+			Workbook workbook = format.create();
+			Sheet sheet = workbook.createSheet();
+			SSUtils.createCustomCell(sheet, 0, 0, null, "text"); //$NON-NLS-1$
+			SSUtils.createCustomCell(sheet, 0, 1, null, (String) null);
+			Row row = reread(workbook).getSheetAt(0).getRow(0);
+			assertEquals(format.name(), Cell.CELL_TYPE_STRING, row.getCell(0).getCellType());
+			assertEquals(format.name(), "text", row.getCell(0).getStringCellValue()); //$NON-NLS-1$
+			assertEquals(format.name(), Cell.CELL_TYPE_STRING, row.getCell(1).getCellType());
+			assertEquals(format.name(), "", row.getCell(1).getStringCellValue()); //$NON-NLS-1$
+		}
+	}
+
+	@Test
+	public void namedCellValueInEveryFormat() throws IOException {
+		for (WorkbookFormat format : WorkbookFormat.values()) {
+			Workbook workbook = format.create();
+			Sheet sheet = workbook.createSheet("Data"); //$NON-NLS-1$
+			SSUtils.getOrCreateCell(sheet, 2, (short) 1);
+			SSUtils.makeNamedCell(workbook, sheet, CELL_NAME, 2, 1);
+			SSUtils.setNamedCellValue(workbook, CELL_NAME, "named"); //$NON-NLS-1$
+			Cell cell = SSUtils.getNamedCell(reread(workbook), CELL_NAME);
+			assertEquals(format.name(), "named", cell.getStringCellValue()); //$NON-NLS-1$
+		}
+	}
+
+	@Test
+	public void mergeInEveryFormat() throws IOException {
+		List<byte[]> sources = createSources(5);
+		List<Double> expected =
+				getValues(SSUtils.collectToSingleWorkBook(	sources.iterator(),
+															3,
+															2,
+															false,
+															300d,
+															9000d));
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			for (WorkbookFormat format : WorkbookFormat.values()) {
+				Workbook merged =
+						SSUtils.collectToSingleWorkBook(sources.iterator(),
+														3,
+														2,
+														false,
+														300d,
+														9000d,
+														null,
+														format);
+				assertEquals(format.name(), expected, getValues(reread(merged)));
+				Workbook streamed =
+						SSUtils.collectToSingleWorkBookStreaming(	sources,
+																	3,
+																	2,
+																	false,
+																	300d,
+																	9000d,
+																	true,
+																	null,
+																	format);
+				assertEquals(format.name(), expected, getValues(reread(streamed)));
+				Workbook parallel =
+						SSUtils.collectToSingleWorkBookParallel(sources,
+																3,
+																2,
+																false,
+																300d,
+																9000d,
+																executor,
+																2,
+																null,
+																format);
+				assertEquals(format.name(), expected, getValues(reread(parallel)));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void collectStylesOnlyInEveryFormat() throws IOException {
+		for (WorkbookFormat format : WorkbookFormat.values()) {
+			Workbook workbook = SSUtils.collectStylesOnlyTo(createSources(3).iterator(), format);
+			assertEquals(format, WorkbookFormat.of(workbook));
+			StyleFingerprint wrap = null;
+			for (short i = 0; i < workbook.getNumCellStyles(); ++i) {
+				StyleFingerprint style = StyleFingerprint.of(workbook, workbook.getCellStyleAt(i));
+				if (style.isWrapText()) {
+					assertEquals(format.name(), null, wrap);
+					wrap = style;
+				}
+			}
+			assertEquals(format.name(), true, wrap != null);
+		}
+	}
+
+}
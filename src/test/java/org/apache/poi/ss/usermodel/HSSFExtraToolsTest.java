@@ -0,0 +1,102 @@
+package org.apache.poi.ss.usermodel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import aaa.utils.poi.MergedRegionIndex;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.HSSFExtraTools.TextMeasurement;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class HSSFExtraToolsTest {
+
+	private static final String[] WORDS =
+			"alpha beta gamma delta epsilon zeta eta theta iota kappa".split(" "); //$NON-NLS-1$ //$NON-NLS-2$
+	/** Высота строки текста в точках */
+	private static final double LINE_HEIGHT = 12.75;
+
+	/** Лист с переносимыми текстами разной длины */
+	private static Sheet createSheet(Workbook workbook) {
+		Sheet sheet = workbook.createSheet();
+		Random random = new Random(42);
+		for (int column = 0; column < 4; ++column) {
+			sheet.setColumnWidth(column, (10 + 5 * column) * 256);
+		}
+		for (int rowIndex = 0; rowIndex < 50; ++rowIndex) {
+			Row row = sheet.createRow(rowIndex);
+			for (int column = 0; column < 4; ++column) {
+				StringBuilder text = new StringBuilder();
+				for (int i = random.nextInt(20); i >= 0; --i) {
+					text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+				}
+				row.createCell(column).setCellValue(text.toString().trim());
+			}
+		}
+		return sheet;
+	}
+
+	private static List<Float> getRowHeights(Sheet sheet) {
+		List<Float> result = new ArrayList<>();
+		for (Row row : sheet) {
+			result.add(row.getHeightInPoints());
+		}
+		return result;
+	}
+
+	/** Быстрое измерение отличается от точного не более чем на строку текста */
+	@Test
+	public void fastMeasurementIsCloseToExact() {
+		Workbook workbook = new HSSFWorkbook();
+		Sheet sheet = createSheet(workbook);
+		assertTrue(HSSFExtraTools
+				.validateFastMeasurement(workbook, sheet, MergedRegionIndex.of(sheet), LINE_HEIGHT)
+				.isEmpty());
+	}
+
+	@Test
+	public void parallelFastMeasurementIsSameAsSequential() {
+		Workbook workbook = new HSSFWorkbook();
+		Sheet sequential = createSheet(workbook);
+		Sheet parallel = createSheet(workbook);
+		MergedRegionIndex mergedRegions = MergedRegionIndex.of(sequential);
+		for (Row row : sequential) {
+			HSSFExtraTools.autoSizeRow(	workbook,
+										sequential,
+										row,
+										mergedRegions,
+										TextMeasurement.FAST);
+		}
+		HSSFExtraTools.autoSizeRows(workbook,
+									parallel,
+									mergedRegions,
+									ForkJoinPool.commonPool(),
+									TextMeasurement.FAST);
+		assertEquals(getRowHeights(sequential), getRowHeights(parallel));
+	}
+
+	/** Высота строки без индекса объединённых ячеек совпадает с высотой, найденной по индексу */
+	@Test
+	public void mergedCellsWithoutIndexAreSameAsWithIndex() {
+		Workbook workbook = new HSSFWorkbook();
+		Sheet sheet = createSheet(workbook);
+		sheet.addMergedRegion(new CellRangeAddress(0, 2, 0, 1));
+		sheet.addMergedRegion(new CellRangeAddress(5, 5, 1, 3));
+		sheet.addMergedRegion(new CellRangeAddress(10, 14, 2, 2));
+		sheet.addMergedRegion(new CellRangeAddress(11, 12, 0, 3));
+		MergedRegionIndex mergedRegions = MergedRegionIndex.of(sheet);
+		for (Row row : sheet) {
+			assertEquals(	HSSFExtraTools.calculateRowSize(workbook, sheet, row, mergedRegions),
+							HSSFExtraTools.calculateRowSize(workbook, sheet, row, true));
+			MergedRegionIndex noRegions = null;
+			assertEquals(	HSSFExtraTools.calculateRowSize(workbook, sheet, row, noRegions),
+							HSSFExtraTools.calculateRowSize(workbook, sheet, row, false));
+		}
+	}
+
+}